@@ -0,0 +1,233 @@
+package com.ciphertechsolutions.io.applicationLogic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.ciphertechsolutions.io.applicationLogic.options.AdvancedOptions;
+import com.ciphertechsolutions.io.device.BlockDevice;
+import com.ciphertechsolutions.io.device.Device;
+import com.ciphertechsolutions.io.device.ImageFile;
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.AcquisitionCheckpoint;
+import com.ciphertechsolutions.io.processing.AsyncDriveReader;
+import com.ciphertechsolutions.io.processing.IMediaReader;
+import com.ciphertechsolutions.io.processing.MemoryBudget;
+import com.ciphertechsolutions.io.processing.MappedImageReader;
+import com.ciphertechsolutions.io.processing.ProcessorManager;
+import com.ciphertechsolutions.io.processing.RecoveryReader;
+
+/**
+ * Runs a single acquisition or conversion from the command line, without the GUI. The source is a raw image file or a
+ * Linux block device, and the output is an Encase6 image with its report beside it, exactly as the GUI writes them.
+ * Progress is printed as plain text. An interrupted run resumes from its checkpoint when run again with the same
+ * output, if the options enable checkpoints.
+ * <p>
+ * Usage: <code>HeadlessLauncher [--verbose] &lt;source&gt; &lt;output&gt; [options profile]</code>, where the output
+ * is the image path without the .E01 extension, and the options profile is either the name of a saved configuration
+ * or the path of a configuration file. The exit code is 0 if the whole source was imaged.
+ */
+public class HeadlessLauncher {
+
+    private static final int EXIT_SUCCESS = 0;
+    private static final int EXIT_INCOMPLETE = 1;
+    private static final int EXIT_USAGE = 2;
+    private final Device device;
+    private final AdvancedOptions options;
+    private final String baseFileName;
+    private volatile ProcessorManager manager;
+    private volatile boolean aborted = false;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private HeadlessLauncher(Device device, AdvancedOptions options, String baseFileName) {
+        this.device = device;
+        this.options = options;
+        this.baseFileName = baseFileName;
+    }
+
+    /**
+     * Runs the acquisition described by the given arguments.
+     * @param args The arguments, see the class description.
+     */
+    public static void main(String[] args) {
+        int argIndex = 0;
+        boolean verbose = false;
+        if (args.length > 0 && args[0].equals("--verbose")) {
+            verbose = true;
+            argIndex++;
+        }
+        if (args.length - argIndex < 2 || args.length - argIndex > 3) {
+            System.err.println("Usage: HeadlessLauncher [--verbose] <source> <output> [options profile]");
+            System.exit(EXIT_USAGE);
+        }
+        if (!verbose) {
+            Logging.removeOutput(System.out);
+            Logging.addOutput(System.out, LogMessageType.ERROR, LogMessageType.WARNING, LogMessageType.USER);
+        }
+        try {
+            Path source = Paths.get(args[argIndex]);
+            Device device = Files.isRegularFile(source) ? new ImageFile(source) : new BlockDevice(source);
+            AdvancedOptions options = loadOptions(args.length - argIndex > 2 ? args[argIndex + 2] : null);
+            MemoryBudget.getShared().setLimit(options.getMemoryBudget());
+            System.exit(new HeadlessLauncher(device, options, getBaseFileName(args[argIndex + 1])).run());
+        }
+        catch (IOException | IllegalArgumentException e) {
+            Logging.log(e.getMessage(), LogMessageType.ERROR);
+            System.exit(EXIT_USAGE);
+        }
+    }
+
+    private static AdvancedOptions loadOptions(String profile) {
+        if (profile == null) {
+            return AdvancedOptions.getDefaultConfig();
+        }
+        if (Files.isRegularFile(Paths.get(profile))) {
+            return AdvancedOptions.loadConfigByPath(Paths.get(profile));
+        }
+        if (AdvancedOptions.getConfigNames().contains(profile)) {
+            return AdvancedOptions.loadConfigByName(profile);
+        }
+        throw new IllegalArgumentException("No options profile or file named " + profile);
+    }
+
+    private static String getBaseFileName(String output) {
+        String baseFileName = output.toLowerCase().endsWith(".e01") ? output.substring(0, output.length() - 4) : output;
+        File parent = new File(baseFileName).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return baseFileName;
+    }
+
+    private int run() throws IOException {
+        AcquisitionCheckpoint checkpoint = findCheckpoint();
+        boolean resuming = checkpoint != null;
+        manager = new ProcessorManager(createReader(), device, options, baseFileName);
+        if (options.getCheckpointInterval() > 0) {
+            manager.enableCheckpoints(options.getCheckpointInterval(), checkpoint);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {stop();}, "HeadlessShutdown"));
+        try (PrintStream reportStream = new PrintStream(new FileOutputStream(baseFileName + "_report.txt", resuming));
+                PrintStream csvStream = new PrintStream(new FileOutputStream(baseFileName + "_gps.csv"))) {
+            Logging.addOutput(reportStream, LogMessageType.REPORT);
+            Logging.addOutput(csvStream, LogMessageType.GPS);
+            // Started afresh even when resuming, the carver writes out the rows found before the checkpoint again.
+            Logging.logSimple("Camera Make, Camera Model, Latitude, Longitude, Altitude, Altitude Reference, Time Stamp",
+                    LogMessageType.GPS);
+            ProgressEventBus progress = new ProgressEventBus(250, TimeUnit.MILLISECONDS);
+            progress.setSource(() -> manager.getStatus(), device.getSize() + 1);
+            progress.addListener(new ProgressPrinter(), Runnable::run);
+            manager.addDefaultProcessors();
+            manager.process();
+            progress.flush();
+            progress.stop();
+            if (!manager.getBadSectors().isEmpty()) {
+                Logging.log(manager.getBadSectors().getSectorCount() + " bad sectors found, see the error2 section of the image.",
+                        LogMessageType.REPORT, LogMessageType.USER);
+            }
+            boolean complete = !aborted && !manager.hasFailed() && manager.getStatus() > device.getSize();
+            Logging.log(complete ? "Imaging Completed Successfully."
+                    : manager.hasFailed() ? "Process failed, the image is incomplete." : "Process aborted.", LogMessageType.REPORT, LogMessageType.USER);
+            Logging.removeOutput(csvStream);
+            Logging.removeOutput(reportStream);
+            return complete ? EXIT_SUCCESS : EXIT_INCOMPLETE;
+        }
+        finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Stops the acquisition when the JVM is asked to exit, and waits for it so the checkpoint and image are left in a
+     * state that can be resumed.
+     */
+    private void stop() {
+        if (finished.getCount() == 0) {
+            return;
+        }
+        aborted = true;
+        manager.stop();
+        try {
+            finished.await();
+        }
+        catch (InterruptedException e) {
+            // Exiting anyway.
+        }
+    }
+
+    private AcquisitionCheckpoint findCheckpoint() {
+        if (options.getCheckpointInterval() <= 0) {
+            return null;
+        }
+        AcquisitionCheckpoint checkpoint = AcquisitionCheckpoint.load(baseFileName);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (!checkpoint.matches(device)) {
+            Logging.log("The checkpoint beside " + baseFileName + " is of a different device, starting over.", LogMessageType.WARNING);
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Creates the reader for the source. Image files are memory mapped. Block devices are read with the recovery
+     * reader in recovery mode, and otherwise with the asynchronous reader.
+     */
+    private IMediaReader createReader() throws IOException {
+        if (device instanceof ImageFile) {
+            return new MappedImageReader(device.getPath());
+        }
+        if (options.isRecoveryMode()) {
+            Path rescueBase = Paths.get(baseFileName);
+            Logging.log("Recovery mode: rescuing to " + rescueBase + ".rescue.dd before imaging.", LogMessageType.USER);
+            return new RecoveryReader(device.getPath(), device.getSize(), rescueBase, options.getRecoveryRetries());
+        }
+        return new AsyncDriveReader(device.getPath(), device.getSize(), options.getReadRequestSize(),
+                Math.max(1, options.getReadQueueDepth()));
+    }
+
+    /**
+     * Prints the progress as each percent of the source is read, at most once a second. Log lines are already
+     * printed by {@link Logging}.
+     */
+    private static class ProgressPrinter implements IProgressListener {
+        private static final long PRINT_INTERVAL_NANOS = 1000000000l;
+        private long lastPercent = -1;
+        private long lastPrintTime = 0;
+
+        @Override
+        public void progressChanged(ProgressSample sample) {
+            long percent = Math.round(Math.floor(sample.getFraction() * 100));
+            long now = System.nanoTime();
+            if (percent == lastPercent || (!sample.isComplete() && now - lastPrintTime < PRINT_INTERVAL_NANOS)) {
+                return;
+            }
+            lastPercent = percent;
+            lastPrintTime = now;
+            StringBuilder line = new StringBuilder("Progress: ").append(percent).append("% (")
+                    .append(Math.min(sample.getValue(), sample.getMax() - 1) >> 20).append(" of ").append(sample.getMax() >> 20)
+                    .append(" MB at ").append(sample.getBytesPerSecond() >> 20).append(" MB/s).");
+            if (sample.isComplete()) {
+                line.append(" Elapsed: ").append(Utils.getPrettyTime(sample.getElapsed()));
+            }
+            else if (sample.getRemaining() != null) {
+                line.append(" Remaining: ").append(Utils.getPrettyTime(sample.getRemaining()));
+            }
+            System.out.println(line);
+        }
+
+        @Override
+        public void linesAdded(List<String> lines) {
+            // Nothing is logged to the bus.
+        }
+    }
+}
@@ -8,7 +8,6 @@ import com.ciphertechsolutions.io.device.Disk;
 import com.ciphertechsolutions.io.ui.BaseController;
 
 import javafx.beans.value.ChangeListener;
-import javafx.collections.ListChangeListener;
 import javafx.util.StringConverter;
 
 /**
@@ -69,6 +68,14 @@ public interface IProcessController extends IStoppable {
      */
     public void stopImaging(Runnable callback);
 
+    /**
+     * Images the given device in the background, alongside the selected device. Its output files and report are kept
+     * apart from those of any other acquisition.
+     * @param device The device to image.
+     * @return True if imaging began, false if the device is already being imaged or could not be opened.
+     */
+    public boolean beginBackgroundImaging(Device device);
+
     /**
      * Returns whether or not there is a {@link Device device} currently selected for imaging.
      * @return True if there is a device, false otherwise.
@@ -82,16 +89,12 @@ public interface IProcessController extends IStoppable {
     public boolean checkValidSaveDirectory();
 
     /**
-     * Registers a {@link ListChangeListener listener} to obtain all logging output from this process controller.
-     * @param listener The listener to register
-     */
-    public void registerOutputListener(ListChangeListener<String> listener);
-
-    /**
-     * Registers a {@link ChangeListener listener} to obtain progress information from this process controller.
+     * Registers a {@link IProgressListener listener} to obtain the progress and logging output of the current
+     * imaging from this process controller. It is called on the JavaFX application thread, and is removed when the
+     * next imaging is set up.
      * @param listener The listener to register
      */
-    public void registerProgressListener(ChangeListener<Number> listener);
+    public void registerProgressListener(IProgressListener listener);
 
     /**
      * Gets the maximum progress count of this process controller. A {@link Device device} must be set first.
@@ -0,0 +1,21 @@
+package com.ciphertechsolutions.io.applicationLogic;
+
+import java.util.List;
+
+/**
+ * Receives the progress and log output of an acquisition from a {@link ProgressEventBus}, in batches.
+ */
+public interface IProgressListener {
+
+    /**
+     * Called with the latest progress, at most once per sampling interval and only when it has changed.
+     * @param sample The progress.
+     */
+    public void progressChanged(ProgressSample sample);
+
+    /**
+     * Called with the log lines written since the last call, oldest first.
+     * @param lines The new lines, never empty.
+     */
+    public void linesAdded(List<String> lines);
+}
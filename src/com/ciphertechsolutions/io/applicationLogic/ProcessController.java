@@ -1,15 +1,23 @@
 package com.ciphertechsolutions.io.applicationLogic;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.applicationLogic.options.AdvancedOptions;
 import com.ciphertechsolutions.io.device.Device;
@@ -17,9 +25,14 @@ import com.ciphertechsolutions.io.device.DeviceManager;
 import com.ciphertechsolutions.io.device.Disk;
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
-import com.ciphertechsolutions.io.logging.ObservableOutputStream;
+import com.ciphertechsolutions.io.processing.AcquisitionCheckpoint;
+import com.ciphertechsolutions.io.processing.AsyncDriveReader;
 import com.ciphertechsolutions.io.processing.DriveReader;
+import com.ciphertechsolutions.io.processing.IMediaReader;
+import com.ciphertechsolutions.io.processing.MemoryBudget;
 import com.ciphertechsolutions.io.processing.ProcessorManager;
+import com.ciphertechsolutions.io.processing.RecoveryReader;
+import com.ciphertechsolutions.io.processing.SectorRangeSet;
 import com.ciphertechsolutions.io.ui.BaseController;
 import com.ciphertechsolutions.io.ui.ImagingController;
 import com.ciphertechsolutions.io.ui.MainScreenController;
@@ -28,7 +41,6 @@ import com.ciphertechsolutions.io.usb.UsbWriteBlock;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
-import javafx.collections.ListChangeListener;
 import javafx.util.StringConverter;
 
 /**
@@ -39,12 +51,15 @@ public class ProcessController implements IProcessController {
 
     private final ApplicationState state;
     private final DeviceManager deviceManager;
-    private Thread processingThread;
     private final Collection<IStoppable> toTerminate;
-    private ProcessorManager activeImaging;
-    private final ObservableOutputStream outputStream;
+    private Acquisition activeImaging;
+    /**
+     * Acquisitions started by {@link #beginBackgroundImaging(Device)}, keyed by device name.
+     */
+    private final Map<String, Acquisition> backgroundImaging = new ConcurrentHashMap<>();
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+    private final ProgressEventBus progressBus;
     private final USBPoller poller;
-    private boolean aborted = false;
 
     /**
      * Sole constructor. Calling this will create an instance of {@link USBPoller} and call
@@ -52,15 +67,17 @@ public class ProcessController implements IProcessController {
      * {@link UsbWriteBlock#enable()} will also be triggered.
      */
     public ProcessController() {
-        outputStream = new ObservableOutputStream();
+        progressBus = new ProgressEventBus(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
         state = new ApplicationState();
+        MemoryBudget.getShared().setLimit(state.getOptions().getMemoryBudget());
         deviceManager = new DeviceManager();
-        toTerminate = new ArrayList<>();
+        toTerminate = new CopyOnWriteArrayList<>();
+        toTerminate.add(progressBus);
         poller = new USBPoller(this);
         toTerminate.add(poller);
         UsbWriteBlock.enable();
         poller.startPolling();
-        Logging.addOutput(new PrintStream(outputStream, true), LogMessageType.ERROR, LogMessageType.WARNING, LogMessageType.USER);
+        Logging.addOutput(new PrintStream(progressBus.getLogStream(), true), LogMessageType.ERROR, LogMessageType.WARNING, LogMessageType.USER);
     }
 
     @Override
@@ -77,6 +94,11 @@ public class ProcessController implements IProcessController {
     @Override
     public Disk findNewDisk() {
         Disk disk = deviceManager.scanForInsertedDisk();
+        for (Acquisition acquisition : backgroundImaging.values()) {
+            if (deviceManager.getDeviceByName(acquisition.device.getName()) == null) {
+                acquisition.stop();
+            }
+        }
         if (state.getSelectedDevice() != null) {
             if (deviceManager.getDeviceByName(state.getSelectedDevice().getName()) == null) {
                 // TODO: Not this way. This code is terrible.
@@ -99,92 +121,204 @@ public class ProcessController implements IProcessController {
 
     @Override
     public boolean setupImaging() {
-        aborted = false;
         Device device = state.getSelectedDevice();
         if (device == null) {
             return false;
         }
-        final String baseName = setupDirectory();
-        DriveReader reader;
         try {
-            reader = new DriveReader(device.getPath());
-            activeImaging = new ProcessorManager(reader, device, state.getOptions(), baseName);
+            activeImaging = new Acquisition(device, () -> state.setSelectedDevice(null));
         }
         catch (IOException e) {
             Logging.log(e);
             return false;
         }
-        processingThread = new Thread(new Runnable() {
-
-            @Override
-            public void run() {
-                try {
-                    PrintStream reportStream = setupReportStream(baseName);
-                    PrintStream csvStream = setupCSVStream(baseName);
-                    toTerminate.add(activeImaging);
-                    activeImaging.addDefaultProcessors();
-                    activeImaging.process();
-                    if (aborted) {
-                        logBadSectors(DriveReader.getBadSectorsList());
-                        Logging.log("Process aborted.", LogMessageType.REPORT, LogMessageType.USER);
-                    }
-                    else {
-                        logBadSectors(DriveReader.getBadSectorsList());
-                        Logging.log("Imaging Completed Successfully.", LogMessageType.REPORT, LogMessageType.USER);
-                    }
-                    Logging.removeOutput(csvStream);
-                    csvStream.close();
-                    Logging.removeOutput(reportStream);
-                    reportStream.close();
-                    state.setSelectedDevice(null);
-                }
-                catch (IOException e) {
-                    Logging.log(e);
-                }
+        ProcessorManager manager = activeImaging.manager;
+        progressBus.setSource(() -> manager.getStatus(), device.getSize() + 1);
+        return true;
+    }
+
+    @Override
+    public boolean beginBackgroundImaging(Device device) {
+        if (backgroundImaging.containsKey(device.getName())
+                || (state.getSelectedDevice() != null && state.getSelectedDevice().getName().equals(device.getName()))) {
+            return false;
+        }
+        Acquisition acquisition;
+        try {
+            acquisition = new Acquisition(device, () -> backgroundImaging.remove(device.getName()));
+        }
+        catch (IOException e) {
+            Logging.log(e);
+            return false;
+        }
+        backgroundImaging.put(device.getName(), acquisition);
+        Logging.log("Imaging " + device.getName() + " alongside " + state.getSelectedDevice().getName() + ".", LogMessageType.USER);
+        acquisition.start();
+        return true;
+    }
+
+    /**
+     * The acquisition of a single device. Each one runs in its own thread group, which every processor thread it
+     * starts inherits, so that its report and GPS output only receive its own messages.
+     */
+    private class Acquisition {
+        private final Device device;
+        private final ProcessorManager manager;
+        private final Thread thread;
+        private final Runnable onFinish;
+        private volatile boolean aborted = false;
+
+        Acquisition(Device device, Runnable onFinish) throws IOException {
+            this.device = device;
+            this.onFinish = onFinish;
+            final AcquisitionCheckpoint checkpoint = findCheckpoint(device);
+            final boolean resuming = checkpoint != null;
+            final String baseName = resuming ? checkpoint.getBaseFileName() : setupDirectory(device);
+            manager = new ProcessorManager(createReader(device), device, state.getOptions(), baseName);
+            if (state.getOptions().getCheckpointInterval() > 0) {
+                manager.enableCheckpoints(state.getOptions().getCheckpointInterval(), checkpoint);
             }
+            thread = new Thread(new ThreadGroup("Acquisition " + device.getName()), () -> {run(baseName, resuming);}, "ProcessingMain");
+        }
 
-            private void logBadSectors(ArrayList<Long> badSectorsList) {
-                StringBuilder sb = new StringBuilder("Bad sectors found at the following sectors: \n");
-                for (Long sector : badSectorsList) {
-                    sb.append(sector + "\n");
-                }
-                if (badSectorsList.size() > 0) {
-                    Logging.log(sb.toString(), LogMessageType.REPORT);
-                }
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            aborted = true;
+            manager.stop();
+        }
 
+        void join() {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                // Nothing to do here.
             }
+        }
 
-            protected PrintStream setupReportStream(final String baseName) throws IOException {
-                File reportFile = new File(baseName + "_report.txt");
-                reportFile.createNewFile();
-                PrintStream reportStream = new PrintStream(reportFile);
-                Logging.addOutput(reportStream, LogMessageType.REPORT);
-                return reportStream;
+        private void run(String baseName, boolean resuming) {
+            try {
+                PrintStream reportStream = setupReportStream(baseName, resuming);
+                PrintStream csvStream = setupCSVStream(baseName);
+                toTerminate.add(manager);
+                manager.addDefaultProcessors();
+                manager.process();
+                if (aborted) {
+                    logBadSectors(manager.getBadSectors());
+                    Logging.log("Process aborted.", LogMessageType.REPORT, LogMessageType.USER);
+                }
+                else if (manager.hasFailed()) {
+                    logBadSectors(manager.getBadSectors());
+                    Logging.log("Process failed, the image is incomplete.", LogMessageType.REPORT, LogMessageType.USER);
+                }
+                else {
+                    logBadSectors(manager.getBadSectors());
+                    Logging.log("Imaging Completed Successfully.", LogMessageType.REPORT, LogMessageType.USER);
+                }
+                Logging.removeOutput(csvStream);
+                csvStream.close();
+                Logging.removeOutput(reportStream);
+                reportStream.close();
             }
+            catch (IOException e) {
+                Logging.log(e);
+            }
+            finally {
+                toTerminate.remove(manager);
+                onFinish.run();
+            }
+        }
 
-            protected PrintStream setupCSVStream(final String baseName) throws IOException {
-                File csvFile = new File(baseName + "_gps.csv");
-                csvFile.createNewFile();
-                PrintStream csvStream = new PrintStream(csvFile);
-                Logging.addOutput(csvStream, LogMessageType.GPS);
-                Logging.logSimple("Camera Make, Camera Model, Latitude, Longitude, Altitude, Altitude Reference, Time Stamp", LogMessageType.GPS);
-                return csvStream;
+        private void logBadSectors(SectorRangeSet badSectors) {
+            if (badSectors.isEmpty()) {
+                return;
             }
-        }, "ProcessingMain");
-        outputStream.clear();
-        return true;
+            StringBuilder sb = new StringBuilder(badSectors.getSectorCount() + " bad sectors found at the following sectors: \n");
+            badSectors.forEachRange((firstSector, count) -> {
+                sb.append(count == 1 ? firstSector + "\n" : firstSector + "-" + (firstSector + count - 1) + "\n");
+            });
+            Logging.log(sb.toString(), LogMessageType.REPORT);
+        }
+
+        protected PrintStream setupReportStream(final String baseName, boolean resuming) throws IOException {
+            File reportFile = new File(baseName + "_report.txt");
+            reportFile.createNewFile();
+            PrintStream reportStream = new PrintStream(new FileOutputStream(reportFile, resuming));
+            Logging.addScopedOutput(reportStream, LogMessageType.REPORT);
+            return reportStream;
+        }
+
+        /**
+         * Starts the GPS output afresh, even when resuming, as the carver writes out the rows found before the
+         * checkpoint again.
+         */
+        protected PrintStream setupCSVStream(final String baseName) throws IOException {
+            File csvFile = new File(baseName + "_gps.csv");
+            csvFile.createNewFile();
+            PrintStream csvStream = new PrintStream(new FileOutputStream(csvFile, false));
+            Logging.addScopedOutput(csvStream, LogMessageType.GPS);
+            Logging.logSimple("Camera Make, Camera Model, Latitude, Longitude, Altitude, Altitude Reference, Time Stamp", LogMessageType.GPS);
+            return csvStream;
+        }
+    }
+
+    /**
+     * Creates the reader for the given device. The recovery reader is used in recovery mode, otherwise the
+     * asynchronous reader is used when the options ask for more than one read in flight.
+     */
+    private IMediaReader createReader(Device device) throws IOException {
+        AdvancedOptions options = state.getOptions();
+        if (options.isRecoveryMode()) {
+            // Not timestamped, so that an interrupted recovery of the same device resumes.
+            Path rescueBase = Paths.get(getBaseDirectory(), device.toFileNameString());
+            Logging.log("Recovery mode: rescuing to " + rescueBase + ".rescue.dd before imaging.", LogMessageType.USER);
+            return new RecoveryReader(device.getPath(), device.getSize(), rescueBase, options.getRecoveryRetries());
+        }
+        if (options.getReadQueueDepth() > 1) {
+            Logging.log("Reading with " + options.getReadQueueDepth() + " requests of " + options.getReadRequestSize() + " bytes in flight.",
+                    LogMessageType.INFO);
+            return new AsyncDriveReader(device.getPath(), device.getSize(), options.getReadRequestSize(), options.getReadQueueDepth());
+        }
+        return new DriveReader(device.getPath(), options.isAdaptiveReadSize());
+    }
+
+    /**
+     * Finds the checkpoint of an interrupted acquisition of the given device. Only the most recent acquisition of the
+     * device is considered, so a completed acquisition is never followed by resuming an older one.
+     * @return The checkpoint, or null if there is nothing to resume or checkpoints are disabled.
+     */
+    private AcquisitionCheckpoint findCheckpoint(Device device) {
+        if (state.getOptions().getCheckpointInterval() <= 0) {
+            return null;
+        }
+        String prefix = device.toFileNameString() + "_";
+        File[] previousRuns = new File(getBaseDirectory()).listFiles(file -> file.isDirectory() && file.getName().startsWith(prefix));
+        if (previousRuns == null || previousRuns.length == 0) {
+            return null;
+        }
+        // Directory names end in a yyyyMMddHHmm timestamp, so the greatest name is the most recent.
+        File latest = Collections.max(Arrays.asList(previousRuns), (first, second) -> first.getName().compareTo(second.getName()));
+        AcquisitionCheckpoint checkpoint = AcquisitionCheckpoint.load(new File(latest, device.toFileNameString()).getPath());
+        if (checkpoint == null || !checkpoint.matches(device)) {
+            return null;
+        }
+        Logging.log("Found an interrupted acquisition in " + latest + ", resuming it.", LogMessageType.USER);
+        return checkpoint;
     }
 
     @Override
     public void beginImaging() {
-        processingThread.start();
+        activeImaging.start();
     }
 
-    protected String setupDirectory() {
-        String baseName = getBaseDirectory() + state.getSelectedDevice().toFileNameString() + "_" +
+    protected String setupDirectory(Device device) {
+        String baseName = getBaseDirectory() + device.toFileNameString() + "_" +
                 new SimpleDateFormat("yyyyMMddHHmm").format(new Date()) + "/";
         new File(baseName).mkdirs();
-        baseName += state.getSelectedDevice().toFileNameString();
+        baseName += device.toFileNameString();
         return baseName;
     }
 
@@ -197,13 +331,8 @@ public class ProcessController implements IProcessController {
     }
 
     @Override
-    public void registerOutputListener(ListChangeListener<String> listener) {
-        outputStream.addListener(listener);
-    }
-
-    @Override
-    public void registerProgressListener(ChangeListener<Number> listener) {
-        activeImaging.addProgressMonitor(listener);
+    public void registerProgressListener(IProgressListener listener) {
+        progressBus.addListener(listener, Platform::runLater);
     }
 
     @Override
@@ -257,6 +386,9 @@ public class ProcessController implements IProcessController {
     @Override
     public void handleDiskInsertion(Disk insertedDisk) {
         if (state.getSelectedDevice() != null) {
+            if (state.getOptions().isConcurrentAcquisition()) {
+                beginBackgroundImaging(insertedDisk);
+            }
             return;
         }
         else {
@@ -274,7 +406,12 @@ public class ProcessController implements IProcessController {
 
     @Override
     public void stop() {
-        aborted = true;
+        if (activeImaging != null) {
+            activeImaging.aborted = true;
+        }
+        for (Acquisition acquisition : backgroundImaging.values()) {
+            acquisition.aborted = true;
+        }
         for (IStoppable toStop : toTerminate) {
             toStop.stop();
         }
@@ -282,14 +419,8 @@ public class ProcessController implements IProcessController {
 
     @Override
     public void stopImaging(Runnable callback) {
-        aborted = true;
         activeImaging.stop();
-        try {
-            processingThread.join();
-        }
-        catch (InterruptedException e) {
-            // Nothing to do here.
-        }
+        activeImaging.join();
         if (callback != null) {
             callback.run();
         }
@@ -297,7 +428,7 @@ public class ProcessController implements IProcessController {
 
     @Override
     public void saveOptions(AdvancedOptions options) {
-        state.setOptions(options);
+        setOptions(options);
         options.saveConfig(options.getName());
         Logging.log("Save successful, config selected.", LogMessageType.INFO);
     }
@@ -305,5 +436,7 @@ public class ProcessController implements IProcessController {
     @Override
     public void setOptions(AdvancedOptions options) {
         state.setOptions(options);
+        // Shared by every acquisition, so it follows the selected options rather than those each acquisition began with.
+        MemoryBudget.getShared().setLimit(options.getMemoryBudget());
     }
 }
@@ -0,0 +1,252 @@
+package com.ciphertechsolutions.io.applicationLogic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * Carries the progress and log output of an acquisition to its listeners without slowing the acquisition down. The
+ * processing threads never call a listener: progress is sampled from the source at a fixed rate, and log lines are
+ * queued without locking and handed out once per sample. Each listener has its own {@link Executor}, such as
+ * <code>Platform::runLater</code>, and never has more than one delivery outstanding on it, so a slow listener is given
+ * fewer, larger batches instead of a growing backlog.
+ */
+public class ProgressEventBus implements IStoppable {
+
+    /**
+     * The weight of the newest sample in the smoothed throughput.
+     */
+    private static final double SMOOTHING = 0.1;
+    private final ScheduledExecutorService sampler;
+    private final Queue<String> newLines = new ConcurrentLinkedQueue<>();
+    private final OutputStream logStream = new LineStream();
+    // Only used by the sampler thread.
+    private final List<Registration> registrations = new ArrayList<>();
+    /**
+     * Every line written since the source was set, given to listeners added later.
+     */
+    private final List<String> history = new ArrayList<>();
+    private Source source;
+
+    /**
+     * Creates a new ProgressEventBus and starts sampling.
+     * @param interval The time between samples.
+     * @param unit The unit of the interval.
+     */
+    public ProgressEventBus(long interval, TimeUnit unit) {
+        sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ProgressEventBus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> {sample();}, interval, interval, unit);
+    }
+
+    /**
+     * Get a stream whose output is delivered to the listeners. Each flush of the stream is one line.
+     * @return The stream, to be wrapped in an auto flushing PrintStream and added to {@link Logging}.
+     */
+    public OutputStream getLogStream() {
+        return logStream;
+    }
+
+    /**
+     * Starts sampling the progress of a new acquisition. Listeners added for the previous one are removed, and the
+     * lines written so far are dropped.
+     * @param progress Supplies the progress. Called from the sampler thread, so it must be cheap and thread safe.
+     * @param max The progress once the acquisition has finished.
+     */
+    public void setSource(LongSupplier progress, long max) {
+        Source newSource = new Source(progress, max);
+        runAndWait(() -> {
+            // Whatever was written before belongs to the previous acquisition.
+            sample();
+            registrations.clear();
+            history.clear();
+            source = newSource;
+        });
+    }
+
+    /**
+     * Adds a listener for the current acquisition. It is first given every line written since the acquisition was
+     * set.
+     * @param listener The listener.
+     * @param executor Runs the deliveries to the listener.
+     */
+    public void addListener(IProgressListener listener, Executor executor) {
+        Registration registration = new Registration(listener, executor);
+        runAndWait(() -> {
+            registration.publish(null, history);
+            registrations.add(registration);
+        });
+    }
+
+    /**
+     * Samples the source and delivers to the listeners now, rather than waiting for the next interval. Waits for the
+     * deliveries if the listeners' executors run them straight away.
+     */
+    public void flush() {
+        runAndWait(() -> {sample();});
+    }
+
+    @Override
+    public void stop() {
+        sampler.shutdownNow();
+    }
+
+    private void runAndWait(Runnable task) {
+        try {
+            sampler.submit(task).get();
+        }
+        catch (ExecutionException e) {
+            Logging.log(e);
+        }
+        catch (InterruptedException | RejectedExecutionException e) {
+            // The bus has been stopped, nothing more is delivered.
+        }
+    }
+
+    private void sample() {
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line = newLines.poll(); line != null; line = newLines.poll()) {
+                lines.add(line);
+            }
+            history.addAll(lines);
+            Source current = source;
+            ProgressSample sample = current == null ? null : current.sample();
+            for (Registration registration : registrations) {
+                registration.publish(sample, lines);
+            }
+        }
+        catch (RuntimeException e) {
+            // Thrown from a scheduled task, it would silently stop all further sampling.
+            Logging.log(e);
+        }
+    }
+
+    /**
+     * The progress of one acquisition. Only sampled by the sampler thread.
+     */
+    private static class Source {
+        private final LongSupplier progress;
+        private final long max;
+        private final long startTime = System.nanoTime();
+        private long lastTime;
+        private long lastValue = -1;
+        private double bytesPerSecond = 0;
+        private boolean completeSent = false;
+
+        Source(LongSupplier progress, long max) {
+            this.progress = progress;
+            this.max = max;
+        }
+
+        /**
+         * Get the current progress.
+         * @return The progress, or null if it is unchanged since the last sample or processing had already finished.
+         */
+        ProgressSample sample() {
+            long value = progress.getAsLong();
+            long now = System.nanoTime();
+            if (completeSent) {
+                return null;
+            }
+            if (lastValue >= 0 && now > lastTime) {
+                double current = (value - lastValue) * 1000000000.0 / (now - lastTime);
+                bytesPerSecond += SMOOTHING * (current - bytesPerSecond);
+            }
+            boolean changed = value != lastValue;
+            lastValue = value;
+            lastTime = now;
+            if (!changed) {
+                // The throughput above still decays while stalled, it is shown with the next change.
+                return null;
+            }
+            completeSent = value >= max;
+            return new ProgressSample(value, max, Math.round(bytesPerSecond), Duration.ofNanos(now - startTime));
+        }
+    }
+
+    /**
+     * One listener, with the progress and lines not yet delivered to it.
+     */
+    private static class Registration {
+        private final IProgressListener listener;
+        private final Executor executor;
+        private final AtomicReference<ProgressSample> latest = new AtomicReference<>();
+        private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+        Registration(IProgressListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void publish(ProgressSample sample, List<String> newLines) {
+            if (sample != null) {
+                latest.set(sample);
+            }
+            lines.addAll(newLines);
+            if ((sample != null || !newLines.isEmpty()) && isScheduled.compareAndSet(false, true)) {
+                executor.execute(() -> {deliver();});
+            }
+        }
+
+        private void deliver() {
+            // Cleared first, so anything published from here on schedules another delivery.
+            isScheduled.set(false);
+            List<String> batch = new ArrayList<>();
+            for (String line = lines.poll(); line != null; line = lines.poll()) {
+                batch.add(line);
+            }
+            if (!batch.isEmpty()) {
+                listener.linesAdded(batch);
+            }
+            ProgressSample sample = latest.getAndSet(null);
+            if (sample != null) {
+                listener.progressChanged(sample);
+            }
+        }
+    }
+
+    /**
+     * Collects written bytes and queues them as a line on each flush.
+     */
+    private class LineStream extends OutputStream {
+        private final ByteArrayOutputStream currentLine = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) {
+            currentLine.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            currentLine.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (currentLine.size() > 0) {
+                newLines.add(currentLine.toString());
+                currentLine.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.ciphertechsolutions.io.applicationLogic;
+
+import java.time.Duration;
+
+/**
+ * The progress of an acquisition at one moment, as sampled by a {@link ProgressEventBus}.
+ */
+public class ProgressSample {
+
+    private final long value;
+    private final long max;
+    private final long bytesPerSecond;
+    private final Duration elapsed;
+
+    ProgressSample(long value, long max, long bytesPerSecond, Duration elapsed) {
+        this.value = value;
+        this.max = max;
+        this.bytesPerSecond = bytesPerSecond;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Get the progress.
+     * @return The number of bytes read, plus one once processing has finished.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Get the progress once processing has finished.
+     * @return The maximum progress.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get whether processing has finished.
+     * @return True if the progress has reached its maximum.
+     */
+    public boolean isComplete() {
+        return value >= max;
+    }
+
+    /**
+     * Get the fraction of the work done.
+     * @return The fraction, from 0 to 1.
+     */
+    public double getFraction() {
+        return Math.min(1, value / (double) max);
+    }
+
+    /**
+     * Get the recent throughput, smoothed over the last few seconds.
+     * @return The throughput in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Get the time since the bus started sampling this acquisition.
+     * @return The elapsed time.
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Get the estimated time until processing finishes, at the recent throughput.
+     * @return The estimate, or null if nothing has been read recently.
+     */
+    public Duration getRemaining() {
+        if (isComplete()) {
+            return Duration.ZERO;
+        }
+        if (bytesPerSecond <= 0) {
+            return null;
+        }
+        return Duration.ofSeconds((max - value) / bytesPerSecond);
+    }
+}
@@ -30,6 +30,9 @@ public class AdvancedOptions extends Properties {
     private final static String BASE_CONFIG_STRING = ".\\Data\\Configs\\";
     private final static String ERROR_LOADING_MSG = "Error loading config, loading default config instead.";
     private final static String ERROR_SAVING_MSG = "Error saving config, config was not saved.";
+    private final static int SECTOR_SIZE = 512;
+    private final static int MAX_READ_QUEUE_DEPTH = 64;
+    private final static int MAX_READ_REQUEST_SIZE = 64 * 1024 * 1024;
     /**
      * An AdvancedOptions containing the default configuration.
      */
@@ -64,7 +67,8 @@ public class AdvancedOptions extends Properties {
 		initOptions.add(note);
 		int index = 0;
     	for (ConfigOptionsEnum option : ConfigOptionsEnum.values()) {
-			setProperty(option.getDisplayName(), initOptions.get(index));
+    	    // Options without a field on the options screen keep their defaults.
+			setProperty(option.getDisplayName(), index < initOptions.size() ? initOptions.get(index) : option.getDefaultValue());
 			index++;
 		}
     }
@@ -168,6 +172,18 @@ public class AdvancedOptions extends Properties {
         return config;
     }
 
+    /**
+     * Loads a configuration from the given file, which need not be in the configuration directory. On error returns
+     * the default config instead.
+     * @param configPath The path of the configuration to load.
+     * @return The loaded configuration.
+     */
+    public static AdvancedOptions loadConfigByPath(Path configPath) {
+        AdvancedOptions config = getDefaultConfig();
+        config.initConfigByPath(configPath);
+        return config;
+    }
+
     /**
      * Deletes a configuration with the given name from disk.
      * @param fileName The name of the configuration to delete.
@@ -298,6 +314,123 @@ public class AdvancedOptions extends Properties {
         return getProperty(ConfigOptionsEnum.EvidenceNumber.getDisplayName());
     }
 
+    /**
+     * Get the number of reads to keep in flight at once. A value greater than 1 selects the asynchronous drive reader.
+     * @return The read queue depth, at least 1.
+     */
+    public int getReadQueueDepth() {
+        return Math.max(1, Math.min(MAX_READ_QUEUE_DEPTH, getIntOption(ConfigOptionsEnum.ReadQueueDepth)));
+    }
+
+    /**
+     * Get the size of each read request made by the asynchronous drive reader. Always a whole number of sectors.
+     * @return The read request size, in bytes.
+     */
+    public int getReadRequestSize() {
+        int requestSize = Math.max(SECTOR_SIZE, Math.min(MAX_READ_REQUEST_SIZE, getIntOption(ConfigOptionsEnum.ReadRequestSize)));
+        return requestSize - (requestSize % SECTOR_SIZE);
+    }
+
+    /**
+     * Get whether the drive reader should tune its read size to the device rather than using a fixed size.
+     * @return True if the read size should be tuned.
+     */
+    public boolean isAdaptiveReadSize() {
+        return Boolean.parseBoolean(getProperty(ConfigOptionsEnum.AdaptiveReadSize.getDisplayName(),
+                ConfigOptionsEnum.AdaptiveReadSize.getDefaultValue()).trim());
+    }
+
+    /**
+     * Get whether drives should be copied to a local rescue image with two-pass bad sector recovery before being
+     * processed. Intended for failing drives. The rescue image is a full, uncompressed copy of the drive kept beside
+     * the output, so the output volume needs free space for the whole drive on top of the image itself; recovery
+     * refuses to start without it.
+     * @return True if recovery mode is enabled.
+     */
+    public boolean isRecoveryMode() {
+        return Boolean.parseBoolean(getProperty(ConfigOptionsEnum.RecoveryMode.getDisplayName(),
+                ConfigOptionsEnum.RecoveryMode.getDefaultValue()).trim());
+    }
+
+    /**
+     * Get the number of times each unreadable sector is retried in recovery mode.
+     * @return The number of retries, at least 1.
+     */
+    public int getRecoveryRetries() {
+        return Math.max(1, getIntOption(ConfigOptionsEnum.RecoveryRetries));
+    }
+
+    /**
+     * Get the number of bytes between acquisition checkpoints. Always a whole number of megabytes, so checkpoints
+     * fall on compression chunk boundaries.
+     * @return The checkpoint interval, or 0 if checkpoints are disabled.
+     */
+    public long getCheckpointInterval() {
+        return Math.max(0, getIntOption(ConfigOptionsEnum.CheckpointInterval)) * 1024l * 1024l;
+    }
+
+    /**
+     * Get whether drives inserted while another drive is being imaged are imaged alongside it, rather than ignored.
+     * @return True if concurrent acquisition is enabled.
+     */
+    public boolean isConcurrentAcquisition() {
+        return Boolean.parseBoolean(getProperty(ConfigOptionsEnum.ConcurrentAcquisition.getDisplayName(),
+                ConfigOptionsEnum.ConcurrentAcquisition.getDefaultValue()).trim());
+    }
+
+    /**
+     * Get whether processors read the shared read buffers directly, each at its own position, rather than being
+     * handed every buffer through their own queue.
+     * @return True if fan-out is enabled.
+     */
+    public boolean isFanOut() {
+        return Boolean.parseBoolean(getProperty(ConfigOptionsEnum.FanOut.getDisplayName(),
+                ConfigOptionsEnum.FanOut.getDefaultValue()).trim());
+    }
+
+    /**
+     * Get the number of bytes that all acquisitions together may hold in flight. Reading pauses, and triage skips
+     * data, while the budget is used up. Applied once for the whole application, so it is taken from the options in
+     * use when the application starts or the options are changed, not from each acquisition. It is raised if too
+     * small for an acquisition's queues.
+     * @return The memory budget, by default half of the maximum heap.
+     */
+    public long getMemoryBudget() {
+        long budget = Math.max(0, getIntOption(ConfigOptionsEnum.MemoryBudget)) * 1024l * 1024l;
+        return budget > 0 ? budget : Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Get whether processing loops run on threads shared by all acquisitions rather than on threads of their own.
+     * @return True if shared threads are enabled.
+     */
+    public boolean isSharedThreads() {
+        return Boolean.parseBoolean(getProperty(ConfigOptionsEnum.SharedThreads.getDisplayName(),
+                ConfigOptionsEnum.SharedThreads.getDefaultValue()).trim());
+    }
+
+    /**
+     * Copies the options that have no field on the options screen from the given options, so that saving from the
+     * options screen does not reset them.
+     * @param other The options to copy from.
+     */
+    public void copyUnlistedOptions(AdvancedOptions other) {
+        for (ConfigOptionsEnum option : ConfigOptionsEnum.values()) {
+            if (!option.isListed() && other.getProperty(option.getDisplayName()) != null) {
+                setProperty(option.getDisplayName(), other.getProperty(option.getDisplayName()));
+            }
+        }
+    }
+
+    private int getIntOption(ConfigOptionsEnum option) {
+        try {
+            return Integer.parseInt(getProperty(option.getDisplayName(), option.getDefaultValue()).trim());
+        }
+        catch (NumberFormatException e) {
+            return Integer.parseInt(option.getDefaultValue());
+        }
+    }
+
     /**
      * Get a list containing the possible compression type settings, in display-friendly string form.
      * @return The compression types.
@@ -314,14 +447,30 @@ public class AdvancedOptions extends Properties {
 	    ExaminerName("examinerName", ""),
 	    CaseNumber("caseNumber", ""),
 	    EvidenceNumber("evidenceNumber", ""),
-	    Notes("notes", "");
+	    Notes("notes", ""),
+	    ReadQueueDepth("readQueueDepth", "1", false),
+	    ReadRequestSize("readRequestSize", "131072", false),
+	    AdaptiveReadSize("adaptiveReadSize", "false", false),
+	    RecoveryMode("recoveryMode", "false", false),
+	    RecoveryRetries("recoveryRetries", "3", false),
+	    CheckpointInterval("checkpointInterval", "0", false),
+	    ConcurrentAcquisition("concurrentAcquisition", "false", false),
+	    FanOut("fanOut", "false", false),
+	    MemoryBudget("memoryBudget", "0", false),
+	    SharedThreads("sharedThreads", "false", false);
 
 		String displayName;
 		String defaultValue;
+		boolean listed;
 
 		ConfigOptionsEnum(String name, String value) {
-			displayName = name;
-			defaultValue = value;
+			this(name, value, true);
+		}
+
+		ConfigOptionsEnum(String name, String value, boolean listed) {
+		    displayName = name;
+		    defaultValue = value;
+		    this.listed = listed;
 		}
 
 		public String getDisplayName() {
@@ -331,6 +480,13 @@ public class AdvancedOptions extends Properties {
 		public String getDefaultValue() {
 			return defaultValue;
 		}
+
+		/**
+		 * Whether this option has a field on the options screen and a matching constructor parameter.
+		 */
+		public boolean isListed() {
+		    return listed;
+		}
 	}
 
 
@@ -19,7 +19,17 @@ public enum CompressionTypesEnum {
     /**
      * Maximal compression. zlib compression level 9.
      */
-    BEST("best", 9);
+    BEST("best", 9),
+    /**
+     * Chosen per chunk while imaging, from zlib compression level 1 to 9, so that neither compression nor writing the
+     * image holds back the other. Its level is {@link #AUTO_LEVEL}, which is not a zlib level.
+     */
+    AUTO("auto", CompressionTypesEnum.AUTO_LEVEL);
+
+    /**
+     * The level of {@link #AUTO}.
+     */
+    public static final int AUTO_LEVEL = -2;
 
 
     private final String displayName;
@@ -0,0 +1,76 @@
+package com.ciphertechsolutions.io.device;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Represents a Linux block device, such as /dev/sdb, for headless acquisitions. The size and serial number are read
+ * from sysfs, as a block device reports no size through the file system.
+ */
+public class BlockDevice extends Device {
+
+    private static final String SYSFS_BLOCK = "/sys/class/block/";
+    private final String serial;
+    private final String model;
+
+    /**
+     * Create a new block device for the device node at the given path.
+     * @param devicePath The path to the device node.
+     * @throws IOException The size of the device could not be determined.
+     */
+    public BlockDevice(Path devicePath) throws IOException {
+        Path sysfs = Paths.get(SYSFS_BLOCK, devicePath.toRealPath().getFileName().toString());
+        name = devicePath.getFileName().toString();
+        path = devicePath.toString();
+        // Sysfs always counts 512 byte sectors, whatever the sector size of the device.
+        size = Long.parseLong(readAttribute(sysfs.resolve("size"), "0")) * 512;
+        if (size <= 0) {
+            throw new IOException("Unable to determine the size of " + devicePath);
+        }
+        serial = readAttribute(sysfs.resolve("device/serial"), readAttribute(sysfs.resolve("device/wwid"), ""));
+        model = readAttribute(sysfs.resolve("device/model"), "");
+    }
+
+    private static String readAttribute(Path attribute, String defaultValue) {
+        try {
+            return new String(Files.readAllBytes(attribute), StandardCharsets.US_ASCII).trim();
+        }
+        catch (IOException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String details() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Block Device: " + getName() + System.lineSeparator());
+        sb.append("Path: " + path + System.lineSeparator());
+        if (!model.isEmpty()) {
+            sb.append("Model: " + model + System.lineSeparator());
+        }
+        if (!serial.isEmpty()) {
+            sb.append("Serial Number: " + serial + System.lineSeparator());
+        }
+        sb.append("Size: " + getSize() + System.lineSeparator());
+        sb.append("Sectors: " + getSize() / 512 + System.lineSeparator());
+        return sb.toString();
+    }
+
+    @Override
+    public String toFileNameString() {
+        return (model.isEmpty() ? name : model + "_" + name).replaceAll("\\W+", "_");
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return serial;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,48 @@
+package com.ciphertechsolutions.io.device;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Represents an existing raw (dd) image file, so that it can be processed like any other device.
+ */
+public class ImageFile extends Device {
+
+    /**
+     * Create a new image file device for the raw image at the given path.
+     * @param imagePath The path to the image.
+     * @throws IOException The size of the image could not be determined.
+     */
+    public ImageFile(Path imagePath) throws IOException {
+        name = imagePath.getFileName().toString();
+        path = imagePath.toString();
+        size = Files.size(imagePath);
+    }
+
+    @Override
+    public String details() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Image File: " + getName() + System.lineSeparator());
+        sb.append("Path: " + path + System.lineSeparator());
+        sb.append("Size: " + getSize() + System.lineSeparator());
+        sb.append("Sectors: " + getSize() / 512 + System.lineSeparator());
+        return sb.toString();
+    }
+
+    @Override
+    public String toFileNameString() {
+        int extension = name.lastIndexOf('.');
+        return (extension > 0 ? name.substring(0, extension) : name).replaceAll("\\W+", "_");
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return "";
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
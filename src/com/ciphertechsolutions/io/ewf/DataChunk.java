@@ -1,11 +1,16 @@
 package com.ciphertechsolutions.io.ewf;
 
+import java.util.Arrays;
+
+import com.ciphertechsolutions.io.processing.ChunkDescriptor;
+import com.ciphertechsolutions.io.processing.PooledBuffer;
+
 /**
  * Chunks of data for converting into sectors for ewf output.
  */
 public class DataChunk {
     /**
-     * The raw data.
+     * The raw data. Only the first {@link #size} bytes are valid.
      */
     public final byte[] data;
     /**
@@ -20,6 +25,11 @@ public class DataChunk {
      * Whether this data is compressed.
      */
     public final boolean compressed;
+    /**
+     * Where on the device the uncompressed data was read from, or null if unknown.
+     */
+    public final ChunkDescriptor descriptor;
+    private final PooledBuffer buffer;
 
     /**
      * Makes a {@link DataChunk} with the given data.
@@ -28,9 +38,61 @@ public class DataChunk {
      * @param compressed Whether or not the data given is compressed.
      */
     public DataChunk(int originalSize, byte[] data, boolean compressed) {
-        this.data = data;
+        this(originalSize, PooledBuffer.wrap(data), compressed, null);
+    }
+
+    /**
+     * Makes a {@link DataChunk} with the given data.
+     * @param originalSize The uncompressed size of the data.
+     * @param data The (possibly compressed) data.
+     * @param compressed Whether or not the data given is compressed.
+     * @param descriptor Where on the device the uncompressed data was read from.
+     */
+    public DataChunk(int originalSize, byte[] data, boolean compressed, ChunkDescriptor descriptor) {
+        this(originalSize, PooledBuffer.wrap(data), compressed, descriptor);
+    }
+
+    /**
+     * Makes a {@link DataChunk} holding the given buffer, which is released when the chunk is {@link #release()
+     * released}.
+     * @param originalSize The uncompressed size of the data.
+     * @param buffer The (possibly compressed) data, taking over the caller's reference.
+     * @param compressed Whether or not the data given is compressed.
+     * @param descriptor Where on the device the uncompressed data was read from.
+     */
+    public DataChunk(int originalSize, PooledBuffer buffer, boolean compressed, ChunkDescriptor descriptor) {
+        this.buffer = buffer;
+        this.data = buffer.array();
         this.originalSize = originalSize;
-        this.size = this.data.length;
+        this.size = buffer.length();
         this.compressed = compressed;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Makes a {@link DataChunk} with the same data as this one, read from somewhere else on the device. The data is
+     * shared, not copied, and each chunk must be released.
+     * @param newDescriptor Where on the device the uncompressed data was read from.
+     * @return The new chunk.
+     */
+    public DataChunk withDescriptor(ChunkDescriptor newDescriptor) {
+        return new DataChunk(originalSize, buffer.retain(), compressed, newDescriptor);
+    }
+
+    /**
+     * Makes a copy of this chunk that does not hold a pooled buffer, for keeping indefinitely, and releases this one.
+     * @return The copy.
+     */
+    public DataChunk detach() {
+        DataChunk copy = new DataChunk(originalSize, Arrays.copyOf(data, size), compressed, descriptor);
+        release();
+        return copy;
+    }
+
+    /**
+     * Returns the data of this chunk to its pool, once it has been written. The chunk must not be used afterwards.
+     */
+    public void release() {
+        buffer.release();
     }
 }
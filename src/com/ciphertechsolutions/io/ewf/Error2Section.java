@@ -19,6 +19,8 @@ public class Error2Section extends Section {
 		super(currentOffset, "error2");
 		numberOfEntires = 0;
 		error2SectorEntries = new ArrayList<>();
+		sectionSize += minimumError2SectionSize;
+		nextOffset += minimumError2SectionSize;
 	}
 
 	private int numberOfEntires;
@@ -31,10 +33,29 @@ public class Error2Section extends Section {
 
 	private static final int minimumError2SectionSize = padding.length + 12; // int + 2 alder;
 
-	public void addEntry(int errorSector, int numSectors) {
-		Error2SectorEntry errorEntry = new Error2SectorEntry(errorSector, numSectors);
-		error2SectorEntries.add(errorEntry);
-		numberOfEntires++;
+	/**
+	 * The largest sector number an entry can hold, as entries store sectors as unsigned 32 bit values.
+	 */
+	public static final long MAX_SECTOR = 0xFFFFFFFFL;
+
+	/**
+	 * Adds a run of unreadable sectors. Runs longer than an entry can hold are split across several entries.
+	 * @param errorSector The first sector of the run, at most {@link #MAX_SECTOR}.
+	 * @param numSectors The number of sectors in the run.
+	 */
+	public void addEntry(long errorSector, long numSectors) {
+		if (errorSector < 0 || errorSector > MAX_SECTOR) {
+			throw new IllegalArgumentException("Sector " + errorSector + " cannot be stored in an error2 section.");
+		}
+		while (numSectors > 0) {
+			long entrySectors = Math.min(numSectors, MAX_SECTOR);
+			error2SectorEntries.add(new Error2SectorEntry(errorSector, entrySectors));
+			numberOfEntires++;
+			sectionSize += Error2SectorEntry.entrySize;
+			nextOffset += Error2SectorEntry.entrySize;
+			errorSector += entrySectors;
+			numSectors -= entrySectors;
+		}
 	}
 
 	public byte[] getFullBytes() {
@@ -60,8 +81,11 @@ public class Error2Section extends Section {
 
 
     private int getPreviousAdler32() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(numberOfEntires);
         Adler32 adlerCalc = new Adler32();
-        adlerCalc.update(numberOfEntires);
+        adlerCalc.update(buffer.array());
         adlerCalc.update(padding);
         checksumPrevious = adlerCalc;
         return (int) adlerCalc.getValue();
@@ -75,10 +99,10 @@ public class Error2Section extends Section {
     }
 
 	private class Error2SectorEntry {
-		int firstErrorSector;
-		int numberOfErrorSectors;
+		long firstErrorSector;
+		long numberOfErrorSectors;
 		static final int entrySize = 8;
-		private Error2SectorEntry(int firstError, int numberofSectors) {
+		private Error2SectorEntry(long firstError, long numberofSectors) {
 			firstErrorSector = firstError;
 			numberOfErrorSectors = numberofSectors;
 		}
@@ -86,8 +110,8 @@ public class Error2Section extends Section {
 		public byte[] getFullBytes() {
 		    ByteBuffer buffer = ByteBuffer.allocate(entrySize);
 		    buffer.order(ByteOrder.LITTLE_ENDIAN);
-		    buffer.putInt(firstErrorSector);
-		    buffer.putInt(numberOfErrorSectors);
+		    buffer.putInt((int) firstErrorSector); // Unsigned
+		    buffer.putInt((int) numberOfErrorSectors);
 		    return buffer.array();
 		}
 	}
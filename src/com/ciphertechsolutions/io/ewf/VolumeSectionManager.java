@@ -52,6 +52,33 @@ public class VolumeSectionManager {
         file.write(EMPTY_VOLUME_SECTION);
     }
 
+    /**
+     * Re-registers the disk section of a segment written by an earlier, interrupted run.
+     * @param file The reopened segment file.
+     * @param offset The offset of the disk section within the file.
+     */
+    public void restoreDiskSection(RandomAccessFile file, long offset) {
+        put(file, new DiskSection(offset, imagedDisk, getFileSetGuid()));
+    }
+
+    /**
+     * Re-registers the data section of a segment written by an earlier, interrupted run.
+     * @param file The reopened segment file.
+     * @param offset The offset of the data section within the file.
+     */
+    public void restoreDataSection(RandomAccessFile file, long offset) {
+        put(file, new DataSection(offset, imagedDisk, getFileSetGuid()));
+    }
+
+    /**
+     * Sets the file set GUID written to every volume section, so that segments written after resuming match the
+     * segments written before.
+     * @param fileSetGUID The GUID of the interrupted run.
+     */
+    public void setFileSetGuid(byte[] fileSetGUID) {
+        this.fileSetGUID = fileSetGUID;
+    }
+
     public void setVolumeSize(int chunks, long sectors) {
         this.chunks = chunks;
         this.sectors = sectors;
@@ -71,7 +98,7 @@ public class VolumeSectionManager {
         }
     }
 
-    private byte[] getFileSetGuid() {
+    public byte[] getFileSetGuid() {
         if (fileSetGUID == null) {
             UUID acquiryID = UUID.randomUUID();
             ByteBuffer guidBuffer = ByteBuffer.allocate(16);
@@ -16,6 +16,7 @@ import java.util.Set;
 public class Logging {
 
     private static final List<LoggingStream> LOGGING_PRINT_STREAMS = Collections.synchronizedList(new ArrayList<>());
+    private static final ThreadLocal<ThreadGroup> BORROWED_SCOPE = new ThreadLocal<>();
 
     static {
         LOGGING_PRINT_STREAMS.add(new LoggingStream(System.out, true));
@@ -38,12 +39,49 @@ public class Logging {
         LOGGING_PRINT_STREAMS.add(new LoggingStream(outputStream, types));
     }
 
+    /**
+     * Adds the given PrintStream and sets it to accept the given {@link LogMessageType message types}, but only when
+     * they are logged by threads in the current thread's {@link ThreadGroup} or its subgroups. This keeps the output of
+     * concurrent acquisitions apart, as each one runs in its own thread group.
+     * @param outputStream The stream to print the logging output to.
+     * @param types The {@link LogMessageType message types} to print.
+     */
+    public static void addScopedOutput(PrintStream outputStream, LogMessageType... types) {
+        LOGGING_PRINT_STREAMS.add(new LoggingStream(outputStream, getCurrentScope(), types));
+    }
+
+    /**
+     * Runs the given task on the current thread as though it were in the given {@link ThreadGroup}, as far as
+     * {@link #addScopedOutput(PrintStream, LogMessageType...) scoped outputs} are concerned. This lets a pooled thread
+     * work on behalf of an acquisition and still log to that acquisition's report.
+     * @param scope The thread group to log as.
+     * @param task The task to run.
+     */
+    public static void runInScope(ThreadGroup scope, Runnable task) {
+        ThreadGroup previous = BORROWED_SCOPE.get();
+        BORROWED_SCOPE.set(scope);
+        try {
+            task.run();
+        }
+        finally {
+            BORROWED_SCOPE.set(previous);
+        }
+    }
+
+    /**
+     * Get the thread group the current thread logs as.
+     */
+    static ThreadGroup getCurrentScope() {
+        ThreadGroup borrowed = BORROWED_SCOPE.get();
+        return borrowed != null ? borrowed : Thread.currentThread().getThreadGroup();
+    }
+
     /**
      * Stops outputting logging to the given PrintStream.
      * @param outputStream The PrintStream to cease logging to.
      */
     public static void removeOutput(PrintStream outputStream) {
-        LOGGING_PRINT_STREAMS.remove(outputStream);
+        LOGGING_PRINT_STREAMS.removeIf(loggingStream -> loggingStream.getStream() == outputStream);
     }
 
     /**
@@ -156,6 +194,7 @@ public class Logging {
 class LoggingStream {
     private final PrintStream stream;
     private final Set<LogMessageType> types;
+    private final ThreadGroup scope;
     private final static Set<LogMessageType> allTypesSet = new HashSet<>(Arrays.asList(LogMessageType.values()));
 
     LoggingStream(PrintStream stream, boolean allTypes) {
@@ -166,18 +205,27 @@ class LoggingStream {
         else {
             this.types = Collections.emptySet();
         }
+        this.scope = null;
     }
 
     LoggingStream(PrintStream stream, LogMessageType... types) {
+        this(stream, null, types);
+    }
+
+    LoggingStream(PrintStream stream, ThreadGroup scope, LogMessageType... types) {
         this.stream = stream;
         this.types = new HashSet<>(Arrays.asList(types));
+        this.scope = scope;
     }
 
     boolean shouldPrint(LogMessageType type) {
-        return this.types.contains(type);
+        return this.types.contains(type) && isInScope();
     }
 
     boolean shouldPrint(LogMessageType[] types) {
+        if (!isInScope()) {
+            return false;
+        }
         for (LogMessageType type : types) {
             if (this.types.contains(type)) {
                 return true;
@@ -186,6 +234,14 @@ class LoggingStream {
         return false;
     }
 
+    private boolean isInScope() {
+        if (scope == null) {
+            return true;
+        }
+        ThreadGroup group = Logging.getCurrentScope();
+        return group != null && scope.parentOf(group);
+    }
+
     PrintStream getStream() {
         return this.stream;
     }
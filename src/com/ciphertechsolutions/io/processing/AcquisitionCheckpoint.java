@@ -0,0 +1,114 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.ciphertechsolutions.io.device.Device;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * A checkpoint of an acquisition, written periodically by a {@link CheckpointWriter}. It holds everything needed to
+ * continue an interrupted acquisition from the checkpointed offset: the digest states and the state of the last EWF
+ * segment. Each processor stores and reads back its own values.
+ */
+public class AcquisitionCheckpoint {
+
+    static final String FILE_SUFFIX = ".checkpoint";
+    static final String OFFSET = "offset";
+    static final String DEVICE_SIZE = "deviceSize";
+    static final String DEVICE_SERIAL = "deviceSerial";
+    private final String baseFileName;
+    private final Properties values;
+
+    private AcquisitionCheckpoint(String baseFileName, Properties values) {
+        this.baseFileName = baseFileName;
+        this.values = values;
+    }
+
+    /**
+     * Loads the checkpoint of the acquisition with the given base file name, if there is one.
+     * @param baseFileName The base file name of the acquisition, as given to {@link ProcessorManager}.
+     * @return The checkpoint, or null if there is none or it cannot be read.
+     */
+    public static AcquisitionCheckpoint load(String baseFileName) {
+        Path checkpointFile = getCheckpointFile(baseFileName);
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        Properties values = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.ISO_8859_1)) {
+            values.load(reader);
+            AcquisitionCheckpoint checkpoint = new AcquisitionCheckpoint(baseFileName, values);
+            checkpoint.getOffset();
+            return checkpoint;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            Logging.log(e);
+            return null;
+        }
+    }
+
+    static Path getCheckpointFile(String baseFileName) {
+        return Paths.get(baseFileName + FILE_SUFFIX);
+    }
+
+    /**
+     * Get whether this checkpoint was taken while acquiring the given device.
+     * @param device The device to check.
+     * @return True if the size and serial number of the device match.
+     */
+    public boolean matches(Device device) {
+        return getLong(DEVICE_SIZE) == device.getSize() && device.getSerialNumber().equals(values.getProperty(DEVICE_SERIAL, ""));
+    }
+
+    /**
+     * Get the base file name of the checkpointed acquisition.
+     * @return The base file name.
+     */
+    public String getBaseFileName() {
+        return baseFileName;
+    }
+
+    /**
+     * Get the offset into the device that the checkpoint was taken at. Everything before it has been written out.
+     * @return The offset, in bytes.
+     */
+    public long getOffset() {
+        return getLong(OFFSET);
+    }
+
+    String getString(String key) {
+        String value = values.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Checkpoint is missing " + key);
+        }
+        return value;
+    }
+
+    /**
+     * Get a numeric value from this checkpoint.
+     * @param key The key of the value.
+     * @return The value.
+     * @throws IllegalArgumentException The value is missing or is not a number.
+     */
+    public long getLong(String key) {
+        return Long.parseLong(getString(key));
+    }
+
+    /**
+     * Get a binary value from this checkpoint.
+     * @param key The key of the value.
+     * @return The value.
+     * @throws IllegalArgumentException The value is missing or is not valid hex.
+     */
+    public byte[] getBytes(String key) {
+        return DatatypeConverter.parseHexBinary(getString(key));
+    }
+}
@@ -0,0 +1,315 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * An implementation of {@link IMediaReader} for reading entire drives that keeps several positional reads in flight
+ * at once, so that devices with deep command queues (NVMe, UAS) are not limited to a queue depth of 1. Reads are
+ * always handed out in device order, regardless of the order in which they complete.
+ */
+public class AsyncDriveReader implements IMediaReader {
+
+    private static final int SECTOR_SIZE = 512;
+    private static final byte[] NULL_SECTOR = new byte[SECTOR_SIZE];
+    private static final int MAX_PRINTED_WARNINGS = 100;
+    private final AsynchronousFileChannel channel;
+    private long deviceSize;
+    private final int requestSize;
+    private final int queueDepth;
+    private final BufferPool bufferPool;
+    private final Deque<PendingRead> inFlight;
+    private long nextOffset = 0l;
+    private PooledBuffer currentLease;
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private long bytesRead;
+    private final SectorRangeSet badSectors = new SectorRangeSet();
+    private boolean hasWarned = false;
+
+    /**
+     * Constructs an AsyncDriveReader to read the drive specified by the given path. The path should be to a physical
+     * drive (e.g. \\\\.\\PhysicalDrive3).
+     * @param toRead The path to the drive to read.
+     * @param deviceSize The size of the drive, in bytes. Reading stops here.
+     * @param requestSize The size of each read request, in bytes. Must be a multiple of the sector size.
+     * @param queueDepth The number of read requests to keep in flight.
+     * @throws IOException An irrecoverable exception occurred during IO.
+     */
+    public AsyncDriveReader(Path toRead, long deviceSize, int requestSize, int queueDepth) throws IOException {
+        if (requestSize <= 0 || requestSize % SECTOR_SIZE != 0) {
+            throw new IllegalArgumentException("Read request size must be a positive multiple of " + SECTOR_SIZE);
+        }
+        channel = AsynchronousFileChannel.open(toRead, StandardOpenOption.READ);
+        this.deviceSize = deviceSize;
+        this.requestSize = requestSize;
+        this.queueDepth = Math.max(1, queueDepth);
+        this.bufferPool = new BufferPool(requestSize, this.queueDepth * 4);
+        this.inFlight = new ArrayDeque<>(this.queueDepth);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (currentLease != null) {
+            currentLease.release();
+            currentLease = null;
+        }
+        fillQueue();
+        PendingRead head = inFlight.poll();
+        if (head == null) {
+            return -1;
+        }
+        int read;
+        try {
+            read = head.complete();
+        }
+        catch (IOException e) {
+            head.lease.release();
+            throw e;
+        }
+        if (read < head.length) {
+            // The reads already issued start after the whole of this one, so they would leave a gap.
+            discardInFlight();
+            nextOffset = head.offset + read;
+            if (read == 0) {
+                Logging.log("The device ended at byte " + nextOffset + ", before its reported size of " + deviceSize + " bytes.",
+                        LogMessageType.WARNING);
+                deviceSize = nextOffset;
+                head.lease.release();
+                return -1;
+            }
+        }
+        fillQueue();
+        currentLease = head.lease;
+        currentLease.setLength(read);
+        buffer = ByteBuffer.wrap(currentLease.array(), 0, read);
+        bytesRead += read;
+        return read;
+    }
+
+    private void fillQueue() {
+        while (inFlight.size() < queueDepth && nextOffset < deviceSize) {
+            int length = (int) Math.min(requestSize, deviceSize - nextOffset);
+            inFlight.add(new PendingRead(nextOffset, length, bufferPool.acquire()));
+            nextOffset += length;
+        }
+    }
+
+    /**
+     * Drops every read not yet handed out, waiting for each to finish with its buffer before releasing it.
+     */
+    private void discardInFlight() {
+        for (PendingRead pending = inFlight.poll(); pending != null; pending = inFlight.poll()) {
+            pending.awaitQuietly();
+            pending.lease.release();
+        }
+    }
+
+    private void logIfNeeded(String warning) {
+        if (badSectors.getSectorCount() > MAX_PRINTED_WARNINGS) {
+            if (!hasWarned) {
+                hasWarned = true;
+                Logging.log("A high number of bad sectors has been detected, individual sector errors will no longer be printed.", LogMessageType.WARNING);
+            }
+        }
+        else {
+            Logging.log(warning, LogMessageType.WARNING);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+    }
+
+    @Override
+    public byte[] getUnsafeBytes() {
+        return buffer.array();
+    }
+
+    @Override
+    public PooledBuffer leaseBuffer() {
+        PooledBuffer lease = currentLease;
+        currentLease = null;
+        return lease;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int getReadSize() {
+        return requestSize;
+    }
+
+    @Override
+    public void seek(long position) {
+        if (!inFlight.isEmpty()) {
+            throw new IllegalStateException("Cannot seek once reading has started.");
+        }
+        nextOffset = position;
+        bytesRead = position;
+    }
+
+    @Override
+    public SectorRangeSet getBadSectors() {
+        return badSectors;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // Well, we tried
+            Logging.log(e);
+        }
+        // Outstanding reads fail once the channel is closed, their buffers can then go back to the pool.
+        discardInFlight();
+        if (currentLease != null) {
+            currentLease.release();
+            currentLease = null;
+        }
+        bufferPool.close();
+    }
+
+    /**
+     * A single positional read that has been issued but not yet handed out.
+     */
+    private class PendingRead {
+        private final long offset;
+        private final int length;
+        private final PooledBuffer lease;
+        private final Future<Integer> result;
+
+        private PendingRead(long offset, int length, PooledBuffer lease) {
+            this.offset = offset;
+            this.length = length;
+            this.lease = lease;
+            this.result = channel.read(ByteBuffer.wrap(lease.array(), 0, length), offset);
+        }
+
+        /**
+         * Waits for this read, finishing any short read and nulling any unreadable sectors.
+         * @return The number of bytes now in the buffer.
+         */
+        private int complete() throws IOException {
+            int read;
+            try {
+                read = Math.max(0, result.get());
+                while (read > 0 && read < length) {
+                    int next = channel.read(ByteBuffer.wrap(lease.array(), read, length - read), offset + read).get();
+                    if (next <= 0) {
+                        break;
+                    }
+                    read += next;
+                }
+                return read;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            catch (ExecutionException e) {
+                return recoverSectors();
+            }
+        }
+
+        /**
+         * Waits for this read to stop using its buffer, whatever its outcome. Interrupts are deferred until it has.
+         */
+        private void awaitQuietly() {
+            boolean isInterrupted = false;
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+                catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Re-reads this request after it failed as a whole, bisecting it as {@link DriveReader} does: each failed
+         * extent is split in half and each half read again, so readable data is read in the largest pieces possible
+         * and each bad sector is isolated in O(log n) reads rather than one read per sector.
+         */
+        private int recoverSectors() throws IOException {
+            recoverExtent(0, length);
+            return length;
+        }
+
+        /**
+         * Reads the given extent of this request, which has failed as part of a larger read, nulling and recording the
+         * sectors that cannot be read.
+         * @param extentOffset The offset of the extent within the request.
+         * @param extentLength The length of the extent.
+         */
+        private void recoverExtent(int extentOffset, int extentLength) throws IOException {
+            if (extentLength <= SECTOR_SIZE) {
+                long currentSector = (offset + extentOffset) / SECTOR_SIZE;
+                badSectors.add(currentSector);
+                logIfNeeded("Bad sector at sector #" + currentSector + ". Nulling sector.");
+                System.arraycopy(NULL_SECTOR, 0, lease.array(), extentOffset, extentLength);
+                return;
+            }
+            int firstHalf = (extentLength / SECTOR_SIZE / 2) * SECTOR_SIZE;
+            if (!tryRead(extentOffset, firstHalf)) {
+                recoverExtent(extentOffset, firstHalf);
+            }
+            if (!tryRead(extentOffset + firstHalf, extentLength - firstHalf)) {
+                recoverExtent(extentOffset + firstHalf, extentLength - firstHalf);
+            }
+        }
+
+        /**
+         * Reads exactly the given extent of this request into its buffer.
+         * @return True if the read succeeded.
+         */
+        private boolean tryRead(int extentOffset, int extentLength) throws IOException {
+            ByteBuffer extent = ByteBuffer.wrap(lease.array(), extentOffset, extentLength);
+            try {
+                while (extent.hasRemaining()) {
+                    if (channel.read(extent, offset + extent.position()).get() < 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            catch (ExecutionException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of buffers read from a device, in order, each with its {@link PooledBuffer#getDescriptor() descriptor}. The
+ * holder of a batch holds one reference to each of its buffers. Batches built by {@link ProcessorManager} are
+ * contiguous and shared by every processor they are handed to, so they must not be modified once handed over; batches
+ * taken by triage may have gaps where buffers were skipped.
+ */
+public final class BufferBatch {
+
+    private final List<PooledBuffer> buffers;
+    private boolean isEndOfInput = false;
+
+    /**
+     * Creates a new, empty BufferBatch.
+     * @param expectedSize The number of buffers expected to be added.
+     */
+    public BufferBatch(int expectedSize) {
+        buffers = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * Adds a buffer to the end of this batch, along with the reference to it held by the caller.
+     * @param buffer The buffer, which must have a descriptor.
+     */
+    public void add(PooledBuffer buffer) {
+        buffers.add(buffer);
+    }
+
+    /**
+     * Marks this batch as the last, after which there is no more input.
+     */
+    public void setEndOfInput() {
+        isEndOfInput = true;
+    }
+
+    /**
+     * Get whether this is the last batch.
+     * @return True if there is no input after this batch.
+     */
+    public boolean isEndOfInput() {
+        return isEndOfInput;
+    }
+
+    /**
+     * Get the number of buffers in this batch.
+     * @return The number of buffers.
+     */
+    public int size() {
+        return buffers.size();
+    }
+
+    /**
+     * Get whether this batch has no buffers.
+     * @return True if there are no buffers.
+     */
+    public boolean isEmpty() {
+        return buffers.isEmpty();
+    }
+
+    /**
+     * Get a buffer in this batch.
+     * @param index The index of the buffer.
+     * @return The buffer.
+     */
+    public PooledBuffer get(int index) {
+        return buffers.get(index);
+    }
+
+    /**
+     * Get the offset into the device of the first byte of a buffer in this batch.
+     * @param index The index of the buffer.
+     * @return The offset, in bytes.
+     */
+    public long getOffset(int index) {
+        return buffers.get(index).getDescriptor().getOffset();
+    }
+
+    /**
+     * Get the total number of valid bytes in the buffers of this batch.
+     * @return The number of bytes.
+     */
+    public long getLength() {
+        long length = 0;
+        for (PooledBuffer buffer : buffers) {
+            length += buffer.length();
+        }
+        return length;
+    }
+
+    /**
+     * Adds a reference to each buffer in this batch, for handing the batch to one more holder.
+     * @return This batch, for convenience.
+     */
+    public BufferBatch retain() {
+        for (PooledBuffer buffer : buffers) {
+            buffer.retain();
+        }
+        return this;
+    }
+
+    /**
+     * Drops the reference to each buffer in this batch. The caller must not access the buffers afterwards.
+     */
+    public void release() {
+        for (PooledBuffer buffer : buffers) {
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of equally sized {@link PooledBuffer PooledBuffers}. Buffers are allocated on demand when the pool is empty,
+ * and at most a fixed number of released buffers are kept for reuse. Only leased buffers are accounted for in the
+ * {@link MemoryBudget#getShared() shared memory budget}, as the budget measures what is in the pipeline: a drained
+ * pipeline must leave room for reading to continue, however many buffers its pools kept. A pool should be
+ * {@link #close() closed} once its owner is done with it, so that the buffers it kept can be collected.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<PooledBuffer> freeBuffers;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Creates a new pool.
+     * @param bufferSize The size, in bytes, of each buffer.
+     * @param maxPooled The maximum number of released buffers to keep for reuse.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.freeBuffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Get a buffer from this pool, allocating a new one if none are free. The caller holds the only reference to
+     * the returned buffer.
+     * @return A buffer with a capacity of {@link #getBufferSize()} bytes.
+     */
+    public PooledBuffer acquire() {
+        MemoryBudget.getShared().reserve(bufferSize);
+        PooledBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            return new PooledBuffer(this, bufferSize);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Drops the released buffers kept for reuse and stops keeping any more. The pool can still be used, but allocates
+     * every buffer.
+     */
+    public void close() {
+        isClosed = true;
+        freeBuffers.clear();
+    }
+
+    /**
+     * Get the size of the buffers in this pool.
+     * @return The buffer size, in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    void recycle(PooledBuffer buffer) {
+        MemoryBudget.getShared().release(bufferSize);
+        if (buffer.capacity() == bufferSize && !isClosed && freeBuffers.offer(buffer) && isClosed) {
+            // Closed while this one was being kept.
+            freeBuffers.clear();
+        }
+    }
+}
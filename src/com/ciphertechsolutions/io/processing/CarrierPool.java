@@ -0,0 +1,154 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * A pool of threads shared by the processing loops of every acquisition, used instead of starting dedicated threads
+ * when {@link com.ciphertechsolutions.io.applicationLogic.options.AdvancedOptions#isSharedThreads() shared threads}
+ * are enabled. A loop keeps its carrier thread until it ends, but the thread then goes back to the pool and is reused
+ * by the next loop that starts, so back to back and overlapping acquisitions do not each create and tear down their
+ * own set of threads. Idle carriers are stopped after a minute.
+ * <p>
+ * Each loop logs as the thread group that started it, so it still reaches its acquisition's report.
+ */
+public class CarrierPool {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final CarrierPool SHARED = new CarrierPool();
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private CarrierPool() {
+        // The carriers belong to no acquisition, so they must not join the thread group of whoever created them.
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        ThreadGroup rootGroup = group;
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread carrier = new Thread(rootGroup, runnable, "Carrier" + threadNumber.getAndIncrement());
+                    carrier.setDaemon(true);
+                    return carrier;
+                });
+    }
+
+    /**
+     * Get the pool shared by all acquisitions.
+     * @return The shared pool.
+     */
+    public static CarrierPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the number of carrier threads, busy or idle.
+     * @return The number of threads.
+     */
+    public int getThreadCount() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * Runs the given loop on a pooled carrier thread.
+     * @param loop The loop to run.
+     * @param name The name the carrier takes while running the loop.
+     * @return The running loop.
+     */
+    public Carrier start(Runnable loop, String name) {
+        Carrier carrier = new Carrier(loop, name, Thread.currentThread().getThreadGroup());
+        executor.execute(() -> {carrier.run();});
+        return carrier;
+    }
+
+    /**
+     * Runs the given loop on a new thread of its own, in the current thread group.
+     * @param loop The loop to run.
+     * @param name The name of the thread.
+     * @return The running loop.
+     */
+    public static Carrier startDedicated(Runnable loop, String name) {
+        Carrier carrier = new Carrier(loop, name, null);
+        new Thread(() -> {carrier.run();}, name).start();
+        return carrier;
+    }
+
+    /**
+     * A loop running on a thread that may be shared, which can be interrupted and joined like a thread of its own.
+     */
+    public static class Carrier {
+        private final Runnable loop;
+        private final String name;
+        private final ThreadGroup scope;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Thread thread;
+        private boolean isInterrupted = false;
+        private boolean isDone = false;
+
+        private Carrier(Runnable loop, String name, ThreadGroup scope) {
+            this.loop = loop;
+            this.name = name;
+            this.scope = scope;
+        }
+
+        private void run() {
+            Thread current = Thread.currentThread();
+            String carrierName = current.getName();
+            synchronized (this) {
+                thread = current;
+                if (isInterrupted) {
+                    current.interrupt();
+                }
+            }
+            try {
+                if (scope == null) {
+                    loop.run();
+                }
+                else {
+                    current.setName(name);
+                    Logging.runInScope(scope, loop);
+                }
+            }
+            catch (RuntimeException e) {
+                Logging.log(e);
+            }
+            finally {
+                synchronized (this) {
+                    isDone = true;
+                    thread = null;
+                }
+                // An interrupt meant for this loop must not reach the next one to use the carrier.
+                Thread.interrupted();
+                current.setName(carrierName);
+                done.countDown();
+            }
+        }
+
+        /**
+         * Interrupts the loop, or makes it start interrupted if it has not started yet.
+         */
+        public synchronized void interrupt() {
+            if (isDone) {
+                return;
+            }
+            isInterrupted = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Waits for the loop to end.
+         * @throws InterruptedException Interrupted while waiting.
+         */
+        public void join() throws InterruptedException {
+            done.await();
+        }
+    }
+}
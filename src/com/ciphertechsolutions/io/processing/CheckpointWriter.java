@@ -0,0 +1,141 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.ciphertechsolutions.io.device.Device;
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * Collects the state of each checkpointing processor at every multiple of the checkpoint interval, and writes an
+ * {@link AcquisitionCheckpoint} once every registered processor has reported in for the same offset. Processors run
+ * at their own pace, so states for an offset are held until the slowest processor reaches it.
+ */
+public class CheckpointWriter {
+
+    private final Path checkpointFile;
+    private final long interval;
+    private final Device device;
+    private final Set<String> parts = new HashSet<>();
+    private final TreeMap<Long, Map<String, String>> pendingValues = new TreeMap<>();
+    private final TreeMap<Long, Set<String>> pendingParts = new TreeMap<>();
+    private boolean closed = false;
+
+    /**
+     * Creates a new CheckpointWriter.
+     * @param baseFileName The base file name of the acquisition, the checkpoint is written beside its output.
+     * @param device The device being acquired.
+     * @param interval The number of bytes between checkpoints. Must be a multiple of the compression chunk size.
+     */
+    public CheckpointWriter(String baseFileName, Device device, long interval) {
+        this.checkpointFile = AcquisitionCheckpoint.getCheckpointFile(baseFileName);
+        this.device = device;
+        this.interval = interval;
+    }
+
+    /**
+     * Get the number of bytes between checkpoints.
+     * @return The checkpoint interval.
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Registers a processor whose state must be part of every checkpoint. Must be called before recording begins.
+     * @param part The name of the processor.
+     */
+    public synchronized void register(String part) {
+        parts.add(part);
+    }
+
+    /**
+     * Records the state of one processor at the given offset.
+     * @param part The name the processor registered with.
+     * @param offset The offset the state was taken at, a multiple of {@link #getInterval()}.
+     * @param values The state.
+     */
+    public synchronized void record(String part, long offset, Map<String, String> values) {
+        if (closed) {
+            return;
+        }
+        pendingValues.computeIfAbsent(offset, key -> new HashMap<>()).putAll(values);
+        Set<String> recorded = pendingParts.computeIfAbsent(offset, key -> new HashSet<>());
+        recorded.add(part);
+        if (recorded.containsAll(parts)) {
+            write(offset, pendingValues.get(offset));
+            pendingValues.headMap(offset, true).clear();
+            pendingParts.headMap(offset, true).clear();
+        }
+    }
+
+    /**
+     * Convenience method to record a single binary value.
+     */
+    public void record(String part, long offset, String key, byte[] value) {
+        Map<String, String> values = new HashMap<>();
+        values.put(key, DatatypeConverter.printHexBinary(value));
+        record(part, offset, values);
+    }
+
+    private void write(long offset, Map<String, String> values) {
+        Properties checkpoint = new Properties();
+        checkpoint.putAll(values);
+        checkpoint.setProperty(AcquisitionCheckpoint.OFFSET, Long.toString(offset));
+        checkpoint.setProperty(AcquisitionCheckpoint.DEVICE_SIZE, Long.toString(device.getSize()));
+        checkpoint.setProperty(AcquisitionCheckpoint.DEVICE_SERIAL, device.getSerialNumber());
+        Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.ISO_8859_1)) {
+                checkpoint.store(writer, "ION acquisition checkpoint");
+            }
+            try {
+                Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Logging.log("Checkpoint written at " + offset + " bytes.", LogMessageType.DEBUG);
+        }
+        catch (IOException e) {
+            Logging.log("Unable to write checkpoint, an interruption now will require starting over.", LogMessageType.WARNING);
+            Logging.log(e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint once the acquisition has completed, so that it is not resumed again. Nothing is
+     * recorded after this is called.
+     */
+    public synchronized void delete() {
+        closed = true;
+        try {
+            Files.deleteIfExists(checkpointFile);
+        }
+        catch (IOException e) {
+            Logging.log(e);
+        }
+    }
+
+    /**
+     * Get whether the given number of bytes falls on a checkpoint.
+     * @param bytes The number of bytes processed.
+     * @return True if a checkpoint should be recorded.
+     */
+    public boolean isCheckpoint(long bytes) {
+        return bytes > 0 && bytes % interval == 0;
+    }
+}
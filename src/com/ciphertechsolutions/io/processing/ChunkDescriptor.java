@@ -0,0 +1,116 @@
+package com.ciphertechsolutions.io.processing;
+
+/**
+ * Describes where a piece of data came from on the device. Every buffer read by an {@link IMediaReader} carries one,
+ * as does every chunk the {@link ChunkedCompressor} produces from them, so each stage knows exactly which bytes it
+ * holds without counting what it has been given, and a stage can check that its input is complete and in order.
+ */
+public final class ChunkDescriptor {
+
+    /**
+     * The size of a sector, in bytes.
+     */
+    public static final int SECTOR_SIZE = 512;
+    /**
+     * Set when the data contains sectors that could not be read and were nulled instead.
+     */
+    public static final int BAD_SECTORS = 1;
+    /**
+     * Set when the data is a single repeated byte, as found on wiped and unused areas of a drive.
+     */
+    public static final int CONSTANT_FILL = 2;
+    /**
+     * Set on a compressed chunk that was stored without trying to compress it, because sampling found it incompressible.
+     */
+    public static final int INCOMPRESSIBLE = 4;
+    private final long offset;
+    private final int length;
+    private final long sequence;
+    private final int flags;
+
+    /**
+     * Creates a new ChunkDescriptor.
+     * @param offset The offset into the device of the first byte.
+     * @param length The number of bytes.
+     * @param sequence The position of the data in the stream it belongs to, counting from 0 at the start of the
+     *        acquisition or resumption.
+     * @param flags Any of {@link #BAD_SECTORS}, {@link #CONSTANT_FILL} and {@link #INCOMPRESSIBLE}.
+     */
+    public ChunkDescriptor(long offset, int length, long sequence, int flags) {
+        this.offset = offset;
+        this.length = length;
+        this.sequence = sequence;
+        this.flags = flags;
+    }
+
+    /**
+     * Get the offset into the device of the first byte.
+     * @return The offset, in bytes.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the number of bytes described.
+     * @return The length, in bytes.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the offset into the device just past the last byte.
+     * @return The end offset, in bytes.
+     */
+    public long getEnd() {
+        return offset + length;
+    }
+
+    /**
+     * Get the first sector of the data.
+     * @return The LBA of the sector containing the first byte.
+     */
+    public long getFirstSector() {
+        return offset / SECTOR_SIZE;
+    }
+
+    /**
+     * Get the number of sectors the data touches.
+     * @return The sector count.
+     */
+    public long getSectorCount() {
+        return (getEnd() + SECTOR_SIZE - 1) / SECTOR_SIZE - getFirstSector();
+    }
+
+    /**
+     * Get the position of the data in the stream it belongs to.
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the flags.
+     * @return The flags, any of {@link #BAD_SECTORS}, {@link #CONSTANT_FILL} and {@link #INCOMPRESSIBLE}.
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Get whether the given flag is set.
+     * @param flag The flag to check.
+     * @return True if it is set.
+     */
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " bytes " + offset + "-" + getEnd() + (hasFlag(BAD_SECTORS) ? " (bad sectors)" : "")
+                + (hasFlag(CONSTANT_FILL) ? " (fill)" : "") + (hasFlag(INCOMPRESSIBLE) ? " (incompressible)" : "");
+    }
+}
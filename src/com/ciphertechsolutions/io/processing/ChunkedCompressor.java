@@ -2,41 +2,111 @@ package com.ciphertechsolutions.io.processing;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
+import com.ciphertechsolutions.io.applicationLogic.options.CompressionTypesEnum;
 import com.ciphertechsolutions.io.ewf.DataChunk;
+import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.triage.ByteUtils;
 
 /**
- * Groups input into a consistently sized chunks, then compresses those chunks. The compression is done in a
- * multi-threaded manner. The output is guaranteed to be in the same order as the input, and is accessible via
- * {@link #getOutputQueue()}.
+ * Groups input into a consistently sized chunks, then compresses those chunks. The compression is done on the
+ * {@link FairExecutor#getShared() shared executor}, one worker per processor, so concurrent acquisitions share the
+ * processors fairly. Each chunk is given the next sequence number of the output, and is published to it as soon as it
+ * is compressed; the output hands chunks on in sequence, so the writer only ever sees finished chunks, in the same
+ * order as the input. The output is accessible via {@link #getOutput()} and is the {@link Port#COMPRESSED} port of the
+ * {@link ProcessorGraph}. Chunks
+ * filled with a single repeated byte, as found on wiped and unused areas of a drive, are not compressed again: the
+ * compressed form of each fill is computed once and shared by every such chunk. Each output chunk carries the
+ * {@link ChunkDescriptor} of the bytes it holds, worked out from the descriptors of the input.
  */
-public class ChunkedCompressor extends ProcessorBase {
+public class ChunkedCompressor extends ProcessorBase implements IFanOutProcessor, IStage {
 
-    private final BlockingQueue<byte[]> byteQueue = new LinkedBlockingQueue<>();
-    private final ExecutorService executor = Executors.newFixedThreadPool(8);
-    private final BlockingQueue<Future<DataChunk>> compressedOutputQueue = new LinkedBlockingQueue<>();
+    private final static int QUEUE_CAPACITY = 32;
+    private final RingBuffer<PooledBuffer> byteQueue = new RingBuffer<>(QUEUE_CAPACITY);
+    private RingBuffer<PooledBuffer>.Cursor byteCursor = byteQueue.newCursor();
+    private final FairExecutor.Client executor = FairExecutor.getShared().newClient();
+    /**
+     * Bounded, so that a slow output holds back compression rather than letting compressed chunks pile up. Its capacity
+     * is also the most chunks that may be compressing or waiting for an earlier chunk at once.
+     */
+    private final RingBuffer<Future<DataChunk>> compressedOutput = new RingBuffer<>(
+            Math.max(QUEUE_CAPACITY, 4 * FairExecutor.getShared().getThreadCount()));
     private final int CHUNK_SIZE;
     private final static int DEFAULT_CHUNK_SIZE = 1024 * 512;
-    private final ByteBuffer localBuffer;
-    private final int compressionLevel;
+    private final static int MAX_POOLED_CHUNKS = 32;
+    private final BufferPool chunkPool;
+    /**
+     * The compressed chunks are written into buffers from this pool, with room for the checksum of a chunk that is
+     * stored uncompressed. The writer releases each one once it is on disk.
+     */
+    private final BufferPool outputPool;
+    private PooledBuffer localChunk;
+    private ByteBuffer localBuffer;
+    /**
+     * Chooses the level of each chunk when the compression type is {@link CompressionTypesEnum#AUTO auto}, otherwise
+     * null.
+     */
+    private final CompressionLevelController levelController;
+    /**
+     * The level of the chunk last described by {@link #nextChunk(long, int, int)}. Only used by the chunking thread.
+     */
+    private int level;
+    /**
+     * Compressed chunks of a single repeated byte, keyed by {@link #fillKey(int, int)}. Only used by the chunking thread.
+     */
+    private final Map<Long, DataChunk> fillCache = new HashMap<>();
+    /**
+     * Compress the chunks of {@link #fillCache}, which is done on the chunking thread rather than a worker. Indexed by
+     * level + 1, created when first needed and ended when this compressor exits.
+     */
+    private final Deflater[] fillDeflaters = new Deflater[Deflater.BEST_COMPRESSION + 2];
+    /**
+     * The offset into the device the next input should start at, or -1 before the first input. Only used by the
+     * chunking thread, as are the fields below.
+     */
+    private long nextOffset = -1;
+    /**
+     * The offset into the device of the first byte in {@link #localBuffer}.
+     */
+    private long localOffset;
+    private int localFlags = 0;
+    /**
+     * The place in the output claimed by {@link #nextChunk(long, int, int)} that nothing has been published to yet, or
+     * -1. Only used by the chunking thread.
+     */
+    private long unpublished = -1;
 
     /**
      * Creates a ChunkedCompressor with the given chunk size and compression level.
      * @param chunkSize The size, in bytes, to group data into.
-     * @param compressionLevel The level of compression to use (uses z-lib for compression).
+     * @param compressionLevel The level of compression to use (uses z-lib for compression), or
+     *        {@link CompressionTypesEnum#AUTO_LEVEL} to choose it per chunk.
      */
     public ChunkedCompressor(int chunkSize, int compressionLevel) {
         super("ChunkCompressor");
         CHUNK_SIZE = chunkSize;
-        localBuffer = ByteBuffer.allocate(CHUNK_SIZE);
-        this.compressionLevel = compressionLevel;
+        chunkPool = new BufferPool(CHUNK_SIZE, MAX_POOLED_CHUNKS);
+        outputPool = new BufferPool(CHUNK_SIZE + 4, compressedOutput.getCapacity() + 1);
+        startLocalChunk();
+        if (compressionLevel == CompressionTypesEnum.AUTO_LEVEL) {
+            levelController = new CompressionLevelController(compressedOutput.getCapacity());
+            level = Deflater.BEST_SPEED;
+        }
+        else {
+            levelController = null;
+            level = compressionLevel;
+        }
+        metrics.setQueueDepth(() -> byteCursor.getLag());
     }
 
     /**
@@ -55,11 +125,36 @@ public class ChunkedCompressor extends ProcessorBase {
     }
 
     /**
-     * Returns the output queue. The contents of this queue are the actual output, not copies of it.
-     * @return The output queue.
+     * Get the most bytes of chunks this compressor may hold at once, compressing or waiting to be written.
+     * @return The number of bytes.
      */
-    public BlockingQueue<Future<DataChunk>> getOutputQueue() {
-        return compressedOutputQueue;
+    public long getMaxBufferedBytes() {
+        // Each chunk in the output holds its input until compressed, and then its output until written.
+        return compressedOutput.getCapacity() * (2L * CHUNK_SIZE + 4);
+    }
+
+    /**
+     * Returns the output. Each consumer reads it through its own {@link RingBuffer#newCursor() cursor}, and the items
+     * are the actual output, not copies of it.
+     * @return The output.
+     */
+    public RingBuffer<Future<DataChunk>> getOutput() {
+        return compressedOutput;
+    }
+
+    @Override
+    public Collection<Port<?>> getInputs() {
+        return Collections.singleton(Port.RAW);
+    }
+
+    @Override
+    public Collection<Port<?>> getOutputs() {
+        return Collections.singleton(Port.COMPRESSED);
+    }
+
+    @Override
+    public void connect(ProcessorGraph graph) {
+        graph.provide(Port.COMPRESSED, compressedOutput);
     }
 
     @Override
@@ -67,71 +162,260 @@ public class ChunkedCompressor extends ProcessorBase {
         try {
             while (isRunning && !Thread.currentThread().isInterrupted())
             {
-                byte[] toRead = byteQueue.poll(5, TimeUnit.SECONDS);
+                long waitStart = System.nanoTime();
+                PooledBuffer toRead = byteCursor.poll(5, TimeUnit.SECONDS);
+                metrics.addInputWait(waitStart);
                 if (toRead != null) {
-                    if (toRead.length == 0)
+                    if (toRead.length() == 0)
                     {
                         finalizeChunkStream();
                         return;
                     }
-                    int offset = 0;
-                    int remainingCapacity = localBuffer.remaining();
-                    boolean isBufferEmpty = localBuffer.position() == 0;
-                    boolean toReadOverCapacity = toRead.length >= remainingCapacity;
-                    if (!isBufferEmpty && toReadOverCapacity) {
-                        offset = fillAndFlushLocalBuffer(toRead, remainingCapacity);
-                    }
-                    int remainingLength = toRead.length - offset;
-                    while (remainingLength != 0) {
-                        if (remainingLength >= CHUNK_SIZE) {
-                            compressedOutputQueue.add(executor.submit(new CompressionTask(Arrays.copyOfRange(toRead, offset, offset + CHUNK_SIZE),
-                                                                                          compressionLevel)));
-                            offset += CHUNK_SIZE;
-                            remainingLength = toRead.length - offset;
-                        }
-                        else {
-                            localBuffer.put(toRead, offset, remainingLength);
-                            remainingLength = 0;
-                        }
-                    }
+                    chunkInput(toRead);
                 }
             }
         }
         catch (InterruptedException e) {
             Logging.log(e);
         }
+        catch (RuntimeException e) {
+            // The writer only stops at the end of the chunks, so it must still be given one.
+            fail(e);
+            abortChunkStream();
+        }
     }
 
-    protected int fillAndFlushLocalBuffer(byte[] toRead, int remainingCapacity) {
+    private void chunkInput(PooledBuffer toRead) throws InterruptedException {
+        ChunkDescriptor source = toRead.getDescriptor();
+        if (nextOffset >= 0 && source.getOffset() != nextOffset) {
+            Logging.log("Input " + source + " does not follow on from byte " + nextOffset + ", the image will not match the device.",
+                    LogMessageType.ERROR);
+        }
+        nextOffset = source.getEnd();
+        int sourceFlags = source.getFlags() & ChunkDescriptor.BAD_SECTORS;
+        byte[] bytes = toRead.array();
+        int length = toRead.length();
+        metrics.addBytesProcessed(length);
+        int offset = 0;
+        int remainingCapacity = localBuffer.remaining();
+        boolean isBufferEmpty = localBuffer.position() == 0;
+        boolean toReadOverCapacity = length >= remainingCapacity;
+        if (!isBufferEmpty && toReadOverCapacity) {
+            localFlags |= sourceFlags;
+            offset = fillAndFlushLocalBuffer(bytes, remainingCapacity);
+        }
+        int remainingLength = length - offset;
+        while (remainingLength != 0) {
+            if (remainingLength >= CHUNK_SIZE) {
+                // Whole chunks are compressed straight out of the shared buffer, the task releases its reference.
+                ChunkDescriptor chunk = nextChunk(source.getOffset() + offset, CHUNK_SIZE, sourceFlags);
+                if (!submitIfFilled(bytes, offset, chunk)) {
+                    submit(chunk.getSequence(), new CompressionTask(toRead.retain(), offset, chunk, level, outputPool));
+                }
+                offset += CHUNK_SIZE;
+                remainingLength = length - offset;
+            }
+            else {
+                if (localBuffer.position() == 0) {
+                    localOffset = source.getOffset() + offset;
+                }
+                localFlags |= sourceFlags;
+                localBuffer.put(bytes, offset, remainingLength);
+                remainingLength = 0;
+            }
+        }
+        toRead.release();
+    }
+
+    protected int fillAndFlushLocalBuffer(byte[] toRead, int remainingCapacity) throws InterruptedException {
         localBuffer.put(toRead, 0, remainingCapacity);
-        compressedOutputQueue.add(executor.submit(new CompressionTask(Arrays.copyOf(localBuffer.array(), localBuffer.position()), compressionLevel)));
-        localBuffer.clear();
+        flushLocalBuffer();
         return remainingCapacity;
     }
 
-    protected void finalizeChunkStream() {
-        if (localBuffer.position() != 0) {
-            compressedOutputQueue.add(executor.submit(new CompressionTask(Arrays.copyOf(localBuffer.array(), localBuffer.position()), compressionLevel)));
+    private void flushLocalBuffer() throws InterruptedException {
+        ChunkDescriptor chunk = nextChunk(localOffset, localBuffer.position(), localFlags);
+        localFlags = 0;
+        if (submitIfFilled(localChunk.array(), 0, chunk)) {
             localBuffer.clear();
+            return;
         }
+        localChunk.setLength(localBuffer.position());
+        submit(chunk.getSequence(), new CompressionTask(localChunk, 0, chunk, level, outputPool));
+        startLocalChunk();
+    }
+
+    /**
+     * Claims the next place in the output, waiting while the output is full unless this compressor is stopped, and
+     * describes the chunk that will go there. The chunk must then be published to the output with the sequence number of the descriptor, compressed at
+     * {@link #level}.
+     */
+    private ChunkDescriptor nextChunk(long offset, int length, int flags) throws InterruptedException {
+        if (levelController != null && length > 0) {
+            level = levelController.nextLevel(byteCursor.getLag() / (double) byteCursor.getCapacity(),
+                    compressedOutput.getBacklog() / (double) compressedOutput.getCapacity());
+        }
+        long waitStart = System.nanoTime();
+        long sequence;
+        try {
+            while ((sequence = compressedOutput.claim(1, TimeUnit.SECONDS)) < 0) {
+                if (!isRunning) {
+                    throw new InterruptedException("Stopped while waiting for room in the output.");
+                }
+            }
+        }
+        finally {
+            metrics.addOutputWait(waitStart);
+        }
+        unpublished = sequence;
+        return new ChunkDescriptor(offset, length, sequence, flags);
+    }
+
+    /**
+     * If the given chunk is a single repeated byte, queues the cached compressed form of that fill in its place.
+     * @return True if the chunk was queued, false if it must be compressed.
+     */
+    private boolean submitIfFilled(byte[] bytes, int offset, ChunkDescriptor chunk) throws InterruptedException {
+        int length = chunk.getLength();
+        int fill = ByteUtils.getFillByte(bytes, offset, length);
+        if (fill < 0) {
+            return false;
+        }
+        ChunkDescriptor filled = new ChunkDescriptor(chunk.getOffset(), length, chunk.getSequence(),
+                chunk.getFlags() | ChunkDescriptor.CONSTANT_FILL);
+        Long key = fillKey(fill, length);
+        DataChunk compressed = fillCache.get(key);
+        if (compressed == null) {
+            try {
+                // Kept for the whole acquisition, so it must not hold on to a pooled buffer.
+                compressed = new CompressionTask(PooledBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + length)), 0, filled,
+                        level, outputPool, getFillDeflater()).call().detach();
+            }
+            catch (Exception e) {
+                Logging.log(e);
+                return false;
+            }
+            fillCache.put(key, compressed);
+        }
+        unpublished = -1;
+        compressedOutput.publish(filled.getSequence(), CompletableFuture.completedFuture(compressed.withDescriptor(filled)));
+        return true;
+    }
+
+    private Deflater getFillDeflater() {
+        if (fillDeflaters[level + 1] == null) {
+            fillDeflaters[level + 1] = new Deflater(level);
+        }
+        return fillDeflaters[level + 1];
+    }
+
+    private static long fillKey(int fill, int length) {
+        return ((long) length << 8) | fill;
+    }
+
+    private void startLocalChunk() {
+        localChunk = chunkPool.acquire();
+        localBuffer = ByteBuffer.wrap(localChunk.array());
+    }
+
+    /**
+     * Queues the given task, which publishes its chunk to the output when it completes, whether or not it succeeds.
+     */
+    private void submit(long sequence, CompressionTask task) {
+        unpublished = -1;
+        executor.execute(new FutureTask<DataChunk>(() -> {
+            long cpuStart = StageMetrics.getCurrentThreadCpuTime();
+            try {
+                return task.call();
+            }
+            finally {
+                metrics.addCpuTime(StageMetrics.getCurrentThreadCpuTime() - cpuStart);
+            }
+        }) {
+            @Override
+            protected void done() {
+                compressedOutput.publish(sequence, this);
+            }
+        });
+    }
+
+    protected void finalizeChunkStream() throws InterruptedException {
+        if (localBuffer.position() != 0) {
+            flushLocalBuffer();
+        }
+        localChunk.release();
+        if (levelController != null) {
+            Logging.log("Chunks compressed at each level: " + levelController.getSummary(), LogMessageType.REPORT);
+        }
+        submitEnd(nextChunk(Math.max(0, nextOffset), 0, 0));
         isRunning = false;
-        compressedOutputQueue.add(executor.submit(new CompressionTask(new byte[0], compressionLevel)));
-        executor.shutdown();
+    }
+
+    /**
+     * Ends the output after a failure, so that the writer stops rather than waiting for chunks that will never come.
+     * The end takes the place of a chunk that was claimed but never published, which would otherwise hold back the
+     * writer.
+     */
+    private void abortChunkStream() {
+        try {
+            if (unpublished >= 0) {
+                submitEnd(new ChunkDescriptor(Math.max(0, nextOffset), 0, unpublished, 0));
+            }
+            else {
+                submitEnd(nextChunk(Math.max(0, nextOffset), 0, 0));
+            }
+        }
+        catch (InterruptedException | RuntimeException e) {
+            Logging.log(e);
+        }
+        finally {
+            isRunning = false;
+        }
+    }
+
+    private void submitEnd(ChunkDescriptor end) {
+        submit(end.getSequence(), new CompressionTask(PooledBuffer.wrap(new byte[0]), 0, end, level, outputPool));
     }
 
     @Override
     public void initialize() {
+        CompressionTask.compressorStarted();
         startThreads();
     }
 
     @Override
     public void finish() {
-        byteQueue.add(new byte[0]);
+        handOff(byteQueue, PooledBuffer.wrap(new byte[0]));
     }
 
     @Override
     public void process(byte[] toProcess) {
-        byteQueue.add(toProcess);
+        handOff(byteQueue, wrapInput(toProcess));
+    }
+
+    @Override
+    public void process(PooledBuffer toProcess) {
+        handOff(byteQueue, toProcess);
+    }
+
+    @Override
+    public void setSource(RingBuffer<PooledBuffer>.Cursor source) {
+        byteCursor.close();
+        byteCursor = source;
+    }
+
+    @Override
+    protected void onExit() {
+        byteCursor.close();
+        chunkPool.close();
+        // The writer may still be releasing chunks, they are freed rather than kept once the pool is closed.
+        outputPool.close();
+        for (Deflater deflater : fillDeflaters) {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        CompressionTask.compressorStopped();
     }
 
     @Override
@@ -0,0 +1,56 @@
+package com.ciphertechsolutions.io.processing;
+
+/**
+ * Guesses whether a chunk is worth compressing from a few small samples of it, so that encrypted volumes and media
+ * files, which deflate cannot shrink, are stored without spending a full compression on each chunk to find that out.
+ * The guess is the Shannon entropy of the sampled bytes: data that deflate can shrink repeats some byte values far
+ * more often than others, while encrypted and already compressed data uses all of them almost equally.
+ */
+final class CompressibilityEstimator {
+
+    private static final int SAMPLE_COUNT = 4;
+    private static final int SAMPLE_SIZE = 1024;
+    /**
+     * In bits per byte. Uniformly random samples of this size measure about 7.95, as the estimate is biased low, and
+     * anything deflate can usefully compress is well below 7.5.
+     */
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.9;
+    private static final double LOG_2 = Math.log(2);
+
+    private CompressibilityEstimator() {
+    }
+
+    /**
+     * Get whether the given data looks incompressible. Data too short to sample is always worth trying.
+     * @param bytes The array holding the data.
+     * @param offset The start of the data.
+     * @param length The length of the data.
+     * @return True if compressing the data would almost certainly not shrink it.
+     */
+    static boolean isIncompressible(byte[] bytes, int offset, int length) {
+        if (length < SAMPLE_COUNT * SAMPLE_SIZE) {
+            return false;
+        }
+        int[] counts = new int[256];
+        // Spread over the whole chunk, so that a chunk straddling the end of a file is unlikely to be judged by one side.
+        int stride = (length - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+        for (int sample = 0; sample < SAMPLE_COUNT; sample++) {
+            int start = offset + sample * stride;
+            for (int i = start; i < start + SAMPLE_SIZE; i++) {
+                counts[bytes[i] & 0xFF]++;
+            }
+        }
+        return getEntropy(counts, SAMPLE_COUNT * SAMPLE_SIZE) >= INCOMPRESSIBLE_ENTROPY;
+    }
+
+    private static double getEntropy(int[] counts, int total) {
+        double entropy = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                double probability = count / (double) total;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy / LOG_2;
+    }
+}
@@ -0,0 +1,93 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.zip.Deflater;
+
+import com.ciphertechsolutions.io.applicationLogic.options.CompressionTypesEnum;
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * Chooses the compression level of each chunk for the {@link CompressionTypesEnum#AUTO auto} compression type, from
+ * how full the queues on either side of the compressor are. Compressed chunks waiting to be written mean the output
+ * disk is holding back everything else, and the spare processor time is spent compressing harder, so the level goes
+ * up. Otherwise, input waiting to be compressed means the processors are holding back the reader, so the level goes
+ * down. When neither queue backs up, the reader is the limit and the level is left alone.
+ * <p>
+ * Only used by the chunking thread.
+ */
+final class CompressionLevelController {
+
+    private static final int MIN_LEVEL = Deflater.BEST_SPEED;
+    private static final int MAX_LEVEL = Deflater.BEST_COMPRESSION;
+    /**
+     * The average fraction of a queue that must be full, over a window, for it to count as backed up.
+     */
+    private static final double BACKED_UP = 0.5;
+    /**
+     * The number of chunks between decisions. A change of level only shows in the queues once the chunks already in
+     * flight have gone through, so deciding more often would overshoot.
+     */
+    private final int window;
+    private int level = MIN_LEVEL;
+    private int chunksInWindow = 0;
+    private double inputFill = 0;
+    private double outputFill = 0;
+    private final long[] chunksAtLevel = new long[MAX_LEVEL + 1];
+
+    /**
+     * Creates a new CompressionLevelController, starting at the fastest level.
+     * @param window The number of chunks between changes of level, at least the number that may be in flight.
+     */
+    CompressionLevelController(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Get the level for the next chunk, taking into account the current state of the queues.
+     * @param inputBacklog The fraction of the input queue waiting to be compressed, from 0 to 1.
+     * @param outputBacklog The fraction of the output queue compressed but not yet written, from 0 to 1.
+     * @return The zlib compression level.
+     */
+    int nextLevel(double inputBacklog, double outputBacklog) {
+        inputFill += inputBacklog;
+        outputFill += outputBacklog;
+        if (++chunksInWindow >= window) {
+            adjust(inputFill / chunksInWindow, outputFill / chunksInWindow);
+            chunksInWindow = 0;
+            inputFill = 0;
+            outputFill = 0;
+        }
+        chunksAtLevel[level]++;
+        return level;
+    }
+
+    private void adjust(double averageInput, double averageOutput) {
+        int newLevel = level;
+        // A slow output backs up the input too, so it is checked first.
+        if (averageOutput >= BACKED_UP) {
+            newLevel = Math.min(MAX_LEVEL, level + 1);
+        }
+        else if (averageInput >= BACKED_UP) {
+            newLevel = Math.max(MIN_LEVEL, level - 1);
+        }
+        if (newLevel != level) {
+            Logging.log("Compression level " + level + " -> " + newLevel + " (input queue " + Math.round(averageInput * 100)
+                    + "% full, output queue " + Math.round(averageOutput * 100) + "% full)", LogMessageType.DEBUG);
+            level = newLevel;
+        }
+    }
+
+    /**
+     * Get the number of chunks given each level.
+     * @return A description of the levels used, for the report.
+     */
+    String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = MIN_LEVEL; i <= MAX_LEVEL; i++) {
+            if (chunksAtLevel[i] > 0) {
+                sb.append(sb.length() == 0 ? "" : ", ").append("level ").append(i).append(": ").append(chunksAtLevel[i]);
+            }
+        }
+        return sb.length() == 0 ? "none" : sb.toString();
+    }
+}
@@ -1,41 +1,189 @@
 package com.ciphertechsolutions.io.processing;
 
 import java.io.UnsupportedEncodingException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.zip.DataFormatException;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 import javax.xml.bind.DatatypeConverter;
 
 import com.ciphertechsolutions.io.ewf.DataChunk;
+import com.ciphertechsolutions.io.processing.events.CompressionEvent;
 import com.ciphertechsolutions.io.processing.triage.ByteUtils;
 
 class CompressionTask implements Callable<DataChunk> {
 
-    private final byte[] input;
+    /**
+     * -1, the default level, through {@link Deflater#BEST_COMPRESSION}.
+     */
+    private static final int LEVEL_COUNT = Deflater.BEST_COMPRESSION + 2;
+    /**
+     * The Deflaters of every worker thread, so that they can be ended once no compressor is running. Guards itself and
+     * {@link #compressorCount}.
+     */
+    private static final List<Deflater[]> ALL_DEFLATERS = new ArrayList<>();
+    private static int compressorCount = 0;
+    /**
+     * Each worker thread keeps one Deflater per level and reuses it for every chunk it compresses, so zlib's native
+     * memory is allocated once per worker instead of once per chunk and left for finalization to free. Each set guards
+     * itself, as it may be ended by another thread.
+     */
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> {
+        Deflater[] deflaters = new Deflater[LEVEL_COUNT];
+        synchronized (ALL_DEFLATERS) {
+            ALL_DEFLATERS.add(deflaters);
+        }
+        return deflaters;
+    });
+    private final PooledBuffer source;
+    private final int offset;
+    private final int length;
+    private final ChunkDescriptor descriptor;
     private final int compressionLevel;
+    private final BufferPool outputPool;
+    /**
+     * The Deflater given by the caller, or null to use the worker's own.
+     */
+    private final Deflater ownDeflater;
 
-    CompressionTask(byte[] toCompress, int compressionLevel) {
-        input = toCompress;
+    /**
+     * Creates a task to compress part of the given buffer. The task takes over one reference to the buffer and
+     * releases it once compression is complete.
+     * @param descriptor Where on the device the part to compress was read from, which also gives its length.
+     * @param outputPool The pool the output is leased from, whose buffers must be at least 4 bytes longer than the
+     *        part to compress. The resulting {@link DataChunk} holds the lease until it is
+     *        {@link DataChunk#release() released}.
+     */
+    CompressionTask(PooledBuffer toCompress, int offset, ChunkDescriptor descriptor, int compressionLevel, BufferPool outputPool) {
+        this(toCompress, offset, descriptor, compressionLevel, outputPool, null);
+    }
+
+    /**
+     * Creates a task to compress part of the given buffer with the given Deflater, for a caller that is not a worker
+     * and so must not be given a worker's Deflaters, which would outlive it.
+     * @param deflater The Deflater to use, at compressionLevel, which the caller owns and ends.
+     */
+    CompressionTask(PooledBuffer toCompress, int offset, ChunkDescriptor descriptor, int compressionLevel, BufferPool outputPool,
+            Deflater deflater) {
+        source = toCompress;
+        this.offset = offset;
+        this.length = descriptor.getLength();
+        this.descriptor = descriptor;
         this.compressionLevel = compressionLevel;
+        this.outputPool = outputPool;
+        this.ownDeflater = deflater;
+    }
+
+    /**
+     * Called when a compressor starts, so that the workers' Deflaters are kept while it runs.
+     */
+    static void compressorStarted() {
+        synchronized (ALL_DEFLATERS) {
+            compressorCount++;
+        }
+    }
+
+    /**
+     * Called when a compressor has stopped. Once none are running, every worker's Deflaters are ended, and a worker
+     * creates them again if another compressor starts.
+     */
+    static void compressorStopped() {
+        synchronized (ALL_DEFLATERS) {
+            if (--compressorCount > 0) {
+                return;
+            }
+            for (Deflater[] deflaters : ALL_DEFLATERS) {
+                synchronized (deflaters) {
+                    for (int i = 0; i < deflaters.length; i++) {
+                        if (deflaters[i] != null) {
+                            deflaters[i].end();
+                            deflaters[i] = null;
+                        }
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public DataChunk call() throws Exception {
-        Deflater deflater = new Deflater(compressionLevel);
-        deflater.setInput(input);
-        deflater.finish();
-        byte[] output = new byte[input.length + 4];
-        int compressedSize = deflater.deflate(output);
-        //Unlikely, but possible.
-        if (compressedSize >= input.length) {
-            System.arraycopy(input, 0, output, 0, input.length);
-            System.arraycopy(ByteUtils.intToBytes(deflater.getAdler()), 0, output, input.length, 4);
-            return new DataChunk(input.length, output, false);
+        CompressionEvent event = new CompressionEvent();
+        event.begin();
+        DataChunk chunk = compress();
+        if (event.shouldCommit()) {
+            event.inputSize = length;
+            event.outputSize = chunk.size;
+            event.compressed = chunk.compressed;
+            event.estimated = chunk.descriptor.hasFlag(ChunkDescriptor.INCOMPRESSIBLE);
+            event.commit();
+        }
+        return chunk;
+    }
+
+    private DataChunk compress() {
+        PooledBuffer output = outputPool.acquire();
+        try {
+            byte[] input = source.array();
+            if (CompressibilityEstimator.isIncompressible(input, offset, length)) {
+                return store(input, output, new ChunkDescriptor(descriptor.getOffset(), length, descriptor.getSequence(),
+                        descriptor.getFlags() | ChunkDescriptor.INCOMPRESSIBLE));
+            }
+            Object deflaterLock = ownDeflater != null ? ownDeflater : DEFLATERS.get();
+            int compressedSize;
+            boolean isComplete;
+            synchronized (deflaterLock) {
+                Deflater deflater = ownDeflater != null ? ownDeflater : getDeflater(compressionLevel);
+                try {
+                    deflater.setInput(input, offset, length);
+                    deflater.finish();
+                    compressedSize = deflater.deflate(output.array(), 0, length);
+                    isComplete = deflater.finished();
+                }
+                finally {
+                    // The deflater is kept for the next chunk, so it must not carry anything over from this one.
+                    deflater.reset();
+                }
+            }
+            //Unlikely, but possible.
+            if (!isComplete || compressedSize >= length) {
+                return store(input, output, descriptor);
+            }
+            output.setLength(compressedSize);
+            return new DataChunk(length, output, true, descriptor);
+        }
+        catch (RuntimeException e) {
+            output.release();
+            throw e;
+        }
+        finally {
+            source.release();
+        }
+    }
+
+    /**
+     * Copies the input into the output uncompressed, followed by its checksum.
+     */
+    private DataChunk store(byte[] input, PooledBuffer output, ChunkDescriptor chunkDescriptor) {
+        Adler32 checksum = new Adler32();
+        checksum.update(input, offset, length);
+        System.arraycopy(input, offset, output.array(), 0, length);
+        System.arraycopy(ByteUtils.intToBytes((int) checksum.getValue()), 0, output.array(), length, 4);
+        output.setLength(length + 4);
+        return new DataChunk(length, output, false, chunkDescriptor);
+    }
+
+    private static Deflater getDeflater(int compressionLevel) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[compressionLevel + 1];
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel);
+            deflaters[compressionLevel + 1] = deflater;
         }
-        return new DataChunk(input.length, Arrays.copyOf(output, compressedSize), true);
+        return deflater;
     }
 
     /**
@@ -5,30 +5,34 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.util.ArrayList;
 
 import com.ciphertechsolutions.io.device.DeviceManager;
 import com.ciphertechsolutions.io.device.Disk;
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.events.DeviceReadEvent;
 
 /**
  * An implementation of {@link IMediaReader} for reading entire drives. Capable of reading physical drives only.
  */
 public class DriveReader implements IMediaReader {
 
-    private static final int SECTORS_PER_CHUNK = 256;
     private static int SECTOR_SIZE = 512; // TODO: does this need to be variable based on the device?
     private static byte[] NULL_SECTOR = new byte[SECTOR_SIZE];
-    private static final int READ_CHUNK_SIZE = SECTOR_SIZE * SECTORS_PER_CHUNK;
-    private int currentReadSize = READ_CHUNK_SIZE;
+    /**
+     * The most bytes of released buffers kept for reuse, so that large read sizes keep fewer of them.
+     */
+    private static final int MAX_POOLED_BYTES = 8 * 1024 * 1024;
+    private final ReadSizeController readSizeController;
+    private int currentReadSize;
     private final FileChannel channel;
+    private BufferPool bufferPool;
+    private PooledBuffer currentLease;
     private ByteBuffer buffer;
     private long bytesRead;
     private final long lastSector;
     private final long lastSectorBytes; // For faster comparisons
-    private long resumeNormalRead = 0l;
-    private static ArrayList<Long> badSectorList;
+    private final SectorRangeSet badSectors = new SectorRangeSet();
     private static final int MAX_PRINTED_WARNINGS = 100;
     private boolean hasWarned = false;
 
@@ -38,35 +42,62 @@ public class DriveReader implements IMediaReader {
      * @param toRead The path to the drive to read.
      * @throws IOException An irrecoverable exception occurred during IO.
      */
-    @SuppressWarnings("resource")
     public DriveReader(Path toRead) throws IOException {
+        this(toRead, false);
+    }
+
+    /**
+     * Constructs a DriveReader to read the drive specified by the given path. The path should be to a physical
+     * drive (e.g. \\\\.\\PhysicalDrive3).
+     * @param toRead The path to the drive to read.
+     * @param adaptiveReadSize If true, the read size is tuned to the device at the start of reading, see
+     *        {@link ReadSizeController}. Otherwise a fixed read size of 128KB is used.
+     * @throws IOException An irrecoverable exception occurred during IO.
+     */
+    @SuppressWarnings("resource")
+    public DriveReader(Path toRead, boolean adaptiveReadSize) throws IOException {
+        readSizeController = new ReadSizeController(adaptiveReadSize);
+        currentReadSize = readSizeController.getReadSize();
+        bufferPool = newBufferPool(currentReadSize);
         channel = new RandomAccessFile(toRead.toFile(), "r").getChannel();
         channel.position(0);
-        buffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
         DeviceManager dManager = new DeviceManager();
         String diskName = toRead.toString().substring(0, toRead.toString().length() - 1);
         Disk disk = dManager.getDeviceByName(diskName);
         lastSector = (disk.getSize() / 512);
         lastSectorBytes = disk.getSize();
-        badSectorList = new ArrayList<>();
     }
 
     @Override
     public int read() throws IOException {
-        buffer.clear();
+        DeviceReadEvent event = new DeviceReadEvent();
+        event.begin();
+        long offset = event.isEnabled() ? channel.position() : 0;
+        int read = readNext(event);
+        if (event.shouldCommit()) {
+            event.offset = offset;
+            event.requestedSize = currentReadSize;
+            event.sizeRead = Math.max(0, read);
+            event.commit();
+        }
+        return read;
+    }
+
+    private int readNext(DeviceReadEvent event) throws IOException {
+        currentReadSize = readSizeController.getReadSize();
+        prepareBuffer();
         int read = 0;
         try {
-            if (currentReadSize < READ_CHUNK_SIZE && bytesRead >= resumeNormalRead) { // once past bad sector(s), ramp back up
-                currentReadSize = READ_CHUNK_SIZE; // don't slowly ramp up.
-                changeReadSize();
-            }
             //Never read past last expected sector, TODO check this doesn't impact speeds
             if (channel.position() >= lastSectorBytes) {
                 return -1;
             }
+            long start = System.nanoTime();
             read = channel.read(buffer);
+            readSizeController.recordRead(currentReadSize, read, System.nanoTime() - start);
         }
         catch (IOException e) {
+            event.failed = true;
             read = buffer.position();
             if (read == 0) {
                 long currentPosition = channel.position();
@@ -75,36 +106,14 @@ public class DriveReader implements IMediaReader {
                 if (currentSector >= lastSector) {
                     return -1;
                 }
-                else if (currentReadSize > SECTOR_SIZE) {
-                    resumeNormalRead = currentPosition + READ_CHUNK_SIZE;
-                    currentReadSize = SECTOR_SIZE;
-                    changeReadSize();
+                else if (readSizeController.rejectSize(currentReadSize)) {
+                    // The device could not handle a read this large, retry at the size the controller settled on.
                     return 0;
                 }
-                else if (currentReadSize == SECTOR_SIZE) {
-                    if (currentSector < lastSector && e.getMessage().contains("The drive cannot find the sector requested")) {
-                        logIfNeeded("The drive cannot find the sector #" + currentSector + ". Nulling chunk and advancing to next sector.");
-                        Logging.log("Current Read size: " + currentReadSize, LogMessageType.DEBUG);
-                        read = markBadSectorAndAdvance(currentSector);
-                    }
-                    else if (e.getMessage().contains("Data error")) {
-                        logIfNeeded("Bad sector at sector #" + currentSector + ". Nulling chunk and advancing to next sector.");
-                        read = markBadSectorAndAdvance(currentSector);
-                    }
-                    else if (currentSector < lastSector) {
-                        logIfNeeded("Unknown error at sector #" + currentSector + ". Nulling chunk and advancing to next sector.");
-                        read = markBadSectorAndAdvance(currentSector);
-                    }
-                    else {
-                        close();
-                        return -1;
-                    }
-                }
-                else {
-                    // We should never get here.
-                    close();
-                    return -1;
-                }
+                read = (int) Math.min(currentReadSize, lastSectorBytes - currentPosition);
+                recoverExtent(currentPosition, 0, read, e);
+                channel.position(currentPosition + read);
+                buffer.position(read);
             }
         }
         bytesRead += read;
@@ -112,8 +121,52 @@ public class DriveReader implements IMediaReader {
         return read;
     }
 
+    /**
+     * Reads the given extent into the buffer after a read covering it has failed. The extent is split in half and each
+     * half is read separately, recursing into any half that fails again. Readable data is therefore read in the largest
+     * pieces possible, and each bad sector is isolated in O(log n) reads. Bad sectors are nulled and recorded.
+     * @param position The device offset of the extent.
+     * @param offset The offset of the extent within the buffer.
+     * @param length The length of the extent, a whole number of sectors.
+     * @param error The error from the failed read.
+     */
+    private void recoverExtent(long position, int offset, int length, IOException error) {
+        if (length <= SECTOR_SIZE) {
+            markBadSector(position / SECTOR_SIZE, offset, error);
+            return;
+        }
+        int firstHalf = (length / SECTOR_SIZE / 2) * SECTOR_SIZE;
+        IOException firstError = tryRead(position, offset, firstHalf);
+        if (firstError != null) {
+            recoverExtent(position, offset, firstHalf, firstError);
+        }
+        IOException secondError = tryRead(position + firstHalf, offset + firstHalf, length - firstHalf);
+        if (secondError != null) {
+            recoverExtent(position + firstHalf, offset + firstHalf, length - firstHalf, secondError);
+        }
+    }
+
+    /**
+     * Attempts a positional read of exactly the given extent into the buffer.
+     * @return null if the read succeeded, the error otherwise.
+     */
+    private IOException tryRead(long position, int offset, int length) {
+        ByteBuffer extent = ByteBuffer.wrap(buffer.array(), offset, length);
+        try {
+            while (extent.hasRemaining()) {
+                if (channel.read(extent, position + extent.position() - offset) < 0) {
+                    return new IOException("Unexpected end of device at byte " + (position + extent.position() - offset));
+                }
+            }
+            return null;
+        }
+        catch (IOException e) {
+            return e;
+        }
+    }
+
     private void logIfNeeded(String warning) {
-        if (badSectorList.size() > MAX_PRINTED_WARNINGS) {
+        if (badSectors.getSectorCount() > MAX_PRINTED_WARNINGS) {
             if (!hasWarned) {
                 hasWarned = true;
                 Logging.log("A high number of bad sectors has been detected, individual sector errors will no longer be printed.", LogMessageType.WARNING);
@@ -125,11 +178,45 @@ public class DriveReader implements IMediaReader {
 
     }
 
-    protected int markBadSectorAndAdvance(long currentSector) throws IOException {
-        badSectorList.add(currentSector);
-        channel.position(channel.position() + SECTOR_SIZE);
-        buffer.put(NULL_SECTOR);
-        return SECTOR_SIZE;
+    protected void markBadSector(long currentSector, int offset, IOException error) {
+        String message = error.getMessage() == null ? "" : error.getMessage();
+        if (message.contains("The drive cannot find the sector requested")) {
+            logIfNeeded("The drive cannot find the sector #" + currentSector + ". Nulling sector.");
+        }
+        else if (message.contains("Data error")) {
+            logIfNeeded("Bad sector at sector #" + currentSector + ". Nulling sector.");
+        }
+        else {
+            logIfNeeded("Unknown error at sector #" + currentSector + ". Nulling sector.");
+        }
+        badSectors.add(currentSector);
+        System.arraycopy(NULL_SECTOR, 0, buffer.array(), offset, SECTOR_SIZE);
+    }
+
+    /**
+     * Makes {@link #buffer} ready for the next read, taking a fresh buffer from the pool if the last one was leased
+     * or is the wrong size.
+     */
+    private void prepareBuffer() {
+        if (currentReadSize > SECTOR_SIZE && bufferPool.getBufferSize() != currentReadSize) {
+            // The read size changed, buffers of the old size are no use any more.
+            bufferPool.close();
+            bufferPool = newBufferPool(currentReadSize);
+        }
+        if (currentLease != null && currentLease.capacity() != bufferPool.getBufferSize()) {
+            currentLease.release();
+            currentLease = null;
+        }
+        if (currentLease == null) {
+            currentLease = bufferPool.acquire();
+            buffer = ByteBuffer.wrap(currentLease.array());
+        }
+        buffer.clear();
+        buffer.limit(currentReadSize);
+    }
+
+    private static BufferPool newBufferPool(int readSize) {
+        return new BufferPool(readSize, Math.max(2, MAX_POOLED_BYTES / readSize));
     }
 
     @Override
@@ -141,11 +228,11 @@ public class DriveReader implements IMediaReader {
             // Well, we tried
             Logging.log(e);
         }
-    }
-
-    private void changeReadSize() {
-        buffer = ByteBuffer.allocate(currentReadSize);
-        buffer.limit(0);
+        if (currentLease != null) {
+            currentLease.release();
+            currentLease = null;
+        }
+        bufferPool.close();
     }
 
     @Override
@@ -166,22 +253,36 @@ public class DriveReader implements IMediaReader {
         return buffer.array();
     }
 
+    @Override
+    public PooledBuffer leaseBuffer() {
+        PooledBuffer lease = currentLease;
+        lease.setLength(buffer.remaining());
+        currentLease = null;
+        return lease;
+    }
+
     @Override
     public long getBytesRead() {
         return bytesRead;
     }
 
-    // TODO: This is bad code and should not be static.
-    /**
-     * Get a list of bad sectors read. This method should be replaced with one that is not static.
-     * @return The bad sectors.
-     */
-    public static ArrayList<Long> getBadSectorsList() {
-        return badSectorList;
+    @Override
+    public void seek(long position) throws IOException {
+        channel.position(position);
+        bytesRead = position;
+    }
+
+    @Override
+    public SectorRangeSet getBadSectors() {
+        return badSectors;
     }
 
+    /**
+     * Get the largest read size this reader may use. Reads are smaller while recovering from read errors, and
+     * may be smaller while an adaptive read size is being tuned.
+     */
     @Override
     public int getReadSize() {
-        return READ_CHUNK_SIZE;
+        return readSizeController.getMaxReadSize();
     }
 }
@@ -3,13 +3,18 @@ package com.ciphertechsolutions.io.processing;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -32,15 +37,35 @@ import com.ciphertechsolutions.io.ewf.TableSection;
 import com.ciphertechsolutions.io.ewf.VolumeSectionManager;
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.events.SegmentRolloverEvent;
+import com.ciphertechsolutions.io.processing.events.TableFlushEvent;
 import com.ciphertechsolutions.io.processing.triage.ByteUtils;
 
 /**
- * A class for managing writing an image in the Encase6 file format.
+ * A class for managing writing an image in the Encase6 file format. The compressed chunks and hashes are either given
+ * to the constructor or, as a stage of a {@link ProcessorGraph}, taken from the {@link Port#COMPRESSED},
+ * {@link Port#MD5} and {@link Port#SHA1} ports.
  */
-public class EWFOutput extends ProcessorBase {
+public class EWFOutput extends ProcessorBase implements IStage {
     private static final long MAX_SEGMENT_SIZE = 1610612736; // TODO: Make this set in the constructor.
     private static final byte[] EWF_MAGIC = { 0x45, 0x56, 0x46, 0x09, 0x0d, 0x0a, (byte) 0xff, 0x00 };
-    private final BlockingQueue<Future<DataChunk>> chunkQueue;
+    private static final int FILE_HEADER_SIZE = EWF_MAGIC.length + 5;
+    private static final String CHECKPOINT_PART = "ewf";
+    private static final String CHECKPOINT_SEGMENT = "ewf.segment";
+    private static final String CHECKPOINT_SEGMENT_LENGTH = "ewf.segmentLength";
+    private static final String CHECKPOINT_SECTORS_OFFSET = "ewf.sectorsOffset";
+    private static final String CHECKPOINT_SECTORS_SIZE = "ewf.sectorsSize";
+    private static final String CHECKPOINT_TABLE = "ewf.table";
+    private static final String CHECKPOINT_CHUNKS = "ewf.chunks";
+    private static final String CHECKPOINT_SECTORS = "ewf.sectors";
+    private static final String CHECKPOINT_GUID = "ewf.guid";
+    private static final String CHECKPOINT_DISK_SECTION = "ewf.diskSectionOffset";
+    private static final String CHECKPOINT_BAD_SECTORS = "ewf.badSectors";
+    private static final String CHECKPOINT_INCOMPRESSIBLE_SECTORS = "ewf.incompressibleSectors";
+    private static final String CHECKPOINT_COMPRESSED_CHUNKS = "ewf.compressedChunks";
+    private static final String CHECKPOINT_STORED_CHUNKS = "ewf.storedChunks";
+    private static final String CHECKPOINT_INCOMPRESSIBLE_CHUNKS = "ewf.incompressibleChunks";
+    private RingBuffer<Future<DataChunk>>.Cursor chunkSource;
     private RandomAccessFile currentOutputFile;
     private final File outputFile;
     private int fileNumber;
@@ -53,52 +78,99 @@ public class EWFOutput extends ProcessorBase {
     private final long expectedSize;
     private final int sectorSize;
     private final LocalDateTime startTime;
-    private final FutureTask<byte[]> md5HashSource;
-    private final FutureTask<byte[]> sha1HashSource;
+    private Future<byte[]> md5HashSource;
+    private Future<byte[]> sha1HashSource;
     private final AdvancedOptions options;
+    private final SectorRangeSet badSectors;
+    private long unrecordedBadSectors;
+    /**
+     * The sectors stored without trying to compress them, as sampling found them incompressible.
+     */
+    private final SectorRangeSet incompressibleSectors = new SectorRangeSet();
+    private long compressedChunks;
+    private long storedChunks;
+    private long incompressibleChunks;
+    private long diskSectionOffset;
+    private CheckpointWriter checkpointWriter;
+    private AcquisitionCheckpoint resumeFrom;
     // TODO: Determine which EWF settings this needs to know about, and how to share those settings.
     // Perhaps repurpose the processing.options package?
 
     /**
-     * Equivalent to {@link #EWFOutput(Device, BlockingQueue, File, FutureTask, FutureTask, AdvancedOptions)
-     * EWFOutput(Device, BlockingQueue, File, null, null, AdvancedOptions)}
+     * Creates a new EWFOutput that takes its compressed chunks and hashes from the {@link ProcessorGraph} it is added
+     * to.
+     * @param toImage The device this image is of.
+     * @param outputFile The file to write the output to. Should end in .E01.
+     * @param options The options used for this image.
+     * @param badSectors The unreadable sectors of the device, recorded in an {@link Error2Section error2} section once
+     *        all data has been written.
+     * @throws IOException
+     */
+    public EWFOutput(Device toImage, File outputFile, AdvancedOptions options, SectorRangeSet badSectors) throws IOException {
+        this(toImage, null, outputFile, null, null, options, badSectors);
+    }
+
+    /**
+     * Equivalent to {@link #EWFOutput(Device, RingBuffer.Cursor, File, Future, Future, AdvancedOptions)
+     * EWFOutput(Device, RingBuffer.Cursor, File, null, null, AdvancedOptions)}
      * @param toImage
-     * @param chunkQueue
+     * @param chunkSource
      * @param outputFile
      * @param options
      * @throws IOException
      */
-    public EWFOutput(Device toImage, BlockingQueue<Future<DataChunk>> chunkQueue, File outputFile, AdvancedOptions options) throws IOException {
-        this(toImage, chunkQueue, outputFile, null, null, options);
+    public EWFOutput(Device toImage, RingBuffer<Future<DataChunk>>.Cursor chunkSource, File outputFile, AdvancedOptions options)
+            throws IOException {
+        this(toImage, chunkSource, outputFile, null, null, options);
     }
 
     /**
-     * Equivalent to {@link #EWFOutput(Device, BlockingQueue, File, FutureTask, FutureTask, AdvancedOptions)
-     * EWFOutput(Device, BlockingQueue, File, md5Hash, null, AdvancedOptions)}
+     * Equivalent to {@link #EWFOutput(Device, RingBuffer.Cursor, File, Future, Future, AdvancedOptions)
+     * EWFOutput(Device, RingBuffer.Cursor, File, md5Hash, null, AdvancedOptions)}
      * @param toImage
-     * @param chunkQueue
+     * @param chunkSource
      * @param outputFile
      * @param options
      * @throws IOException
      */
-    public EWFOutput(Device toImage, BlockingQueue<Future<DataChunk>> chunkQueue, File outputFile, FutureTask<byte[]> md5Hash, AdvancedOptions options)
-            throws IOException {
-        this(toImage, chunkQueue, outputFile, md5Hash, null, options);
+    public EWFOutput(Device toImage, RingBuffer<Future<DataChunk>>.Cursor chunkSource, File outputFile, Future<byte[]> md5Hash,
+            AdvancedOptions options) throws IOException {
+        this(toImage, chunkSource, outputFile, md5Hash, null, options);
+    }
+
+    /**
+     * Equivalent to {@link #EWFOutput(Device, RingBuffer.Cursor, File, Future, Future, AdvancedOptions, SectorRangeSet)
+     * EWFOutput(Device, RingBuffer.Cursor, File, md5Hash, sha1Hash, AdvancedOptions, new SectorRangeSet())}
+     * @param toImage
+     * @param chunkSource
+     * @param outputFile
+     * @param md5Hash
+     * @param sha1Hash
+     * @param options
+     * @throws IOException
+     */
+    public EWFOutput(Device toImage, RingBuffer<Future<DataChunk>>.Cursor chunkSource, File outputFile,
+            Future<byte[]> md5Hash, Future<byte[]> sha1Hash, AdvancedOptions options) throws IOException {
+        this(toImage, chunkSource, outputFile, md5Hash, sha1Hash, options, new SectorRangeSet());
     }
 
     /**
      * Creates a new EWFOutput with the given parameters.
      * @param toImage The device this image is of.
-     * @param chunkQueue The source of data chunks to build the {@link SectorsSection Sectors} segments with.
+     * @param chunkSource The source of data chunks to build the {@link SectorsSection Sectors} segments with, or null
+     *        to take them and the hashes from the {@link ProcessorGraph} this output is added to.
      * @param outputFile The file to write the output to. Should end in .E01.
      * @param md5Hash The source of the MD5 digest hash.
      * @param sha1Hash The source of the SHA1 digest hash.
      * @param options The options used for this image.
+     * @param badSectors The unreadable sectors of the device, recorded in an {@link Error2Section error2} section once
+     *        all data has been written.
      * @throws IOException
      */
-    public EWFOutput(Device toImage, BlockingQueue<Future<DataChunk>> chunkQueue, File outputFile,
-            FutureTask<byte[]> md5Hash, FutureTask<byte[]> sha1Hash, AdvancedOptions options) throws IOException {
+    public EWFOutput(Device toImage, RingBuffer<Future<DataChunk>>.Cursor chunkSource, File outputFile,
+            Future<byte[]> md5Hash, Future<byte[]> sha1Hash, AdvancedOptions options, SectorRangeSet badSectors) throws IOException {
         super("EWFWriter");
+        this.badSectors = badSectors;
         this.fileNumber = 1;
         this.outputFile = outputFile;
         this.expectedSize = toImage.getSize();
@@ -113,11 +185,34 @@ public class EWFOutput extends ProcessorBase {
         this.md5HashSource = md5Hash;
         this.sha1HashSource = sha1Hash;
         currentOutputFile = new RandomAccessFile(this.outputFile.getAbsolutePath(), "rw");
-        currentOutputFile.setLength(0);
-        this.chunkQueue = chunkQueue;
+        this.chunkSource = chunkSource;
         this.sectorSize = 512; // TODO: remove hardcoded
         this.options = options;
         this.startTime = LocalDateTime.now();
+        metrics.setQueueDepth(() -> this.chunkSource == null ? 0 : this.chunkSource.getLag());
+    }
+
+    @Override
+    public Collection<Port<?>> getInputs() {
+        if (chunkSource != null) {
+            // Wired by hand.
+            return Collections.emptyList();
+        }
+        return Arrays.asList(Port.COMPRESSED, Port.MD5, Port.SHA1);
+    }
+
+    @Override
+    public Collection<Port<?>> getOutputs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void connect(ProcessorGraph graph) {
+        if (chunkSource == null) {
+            chunkSource = graph.subscribe(Port.COMPRESSED);
+            md5HashSource = graph.getResult(Port.MD5);
+            sha1HashSource = graph.getResult(Port.SHA1);
+        }
     }
 
     @Override
@@ -125,10 +220,36 @@ public class EWFOutput extends ProcessorBase {
         // Do nothing.
     }
 
+    @Override
+    public void process(PooledBuffer toProcess) {
+        // Do nothing, the compressed chunks are read from the chunk source instead.
+        toProcess.release();
+    }
+
+    /**
+     * Makes this output record its state at every checkpoint, optionally continuing the image written by an
+     * interrupted run. Must be called before {@link #initialize()}.
+     * @param writer The checkpoint writer to record to.
+     * @param resumeFrom The checkpoint to resume from, or null to start a new image.
+     */
+    public void setCheckpointing(CheckpointWriter writer, AcquisitionCheckpoint resumeFrom) {
+        this.checkpointWriter = writer;
+        this.resumeFrom = resumeFrom;
+    }
+
     @Override
     public void initialize() {
         try {
-            initializeEWFFile();
+            if (checkpointWriter != null) {
+                checkpointWriter.register(CHECKPOINT_PART);
+            }
+            if (resumeFrom != null) {
+                resumeEWFFile();
+            }
+            else {
+                currentOutputFile.setLength(0);
+                initializeEWFFile();
+            }
         }
         catch (IOException e) {
             // TODO Auto-generated catch block
@@ -145,6 +266,70 @@ public class EWFOutput extends ProcessorBase {
         beginSectorsSection();
     }
 
+    /**
+     * Reopens the segments written by an interrupted run, truncates the last one back to the checkpoint and restores
+     * the open sectors section and table, so that writing continues as if never interrupted.
+     */
+    private void resumeEWFFile() throws IOException {
+        volumeManager.setFileSetGuid(resumeFrom.getBytes(CHECKPOINT_GUID));
+        diskSectionOffset = resumeFrom.getLong(CHECKPOINT_DISK_SECTION);
+        volumeManager.restoreDiskSection(currentOutputFile, diskSectionOffset);
+        fileNumber = (int) resumeFrom.getLong(CHECKPOINT_SEGMENT);
+        for (int segment = 2; segment <= fileNumber; segment++) {
+            currentOutputFile = new RandomAccessFile(getSegmentFileName(segment), "rw");
+            volumeManager.restoreDataSection(currentOutputFile, FILE_HEADER_SIZE);
+        }
+        currentOutputFile.setLength(resumeFrom.getLong(CHECKPOINT_SEGMENT_LENGTH));
+        currentOutputFile.seek(currentOutputFile.length());
+        currentSectorsSection = new SectorsSection(resumeFrom.getLong(CHECKPOINT_SECTORS_OFFSET));
+        currentSectorsSection.add((int) (resumeFrom.getLong(CHECKPOINT_SECTORS_SIZE) - currentSectorsSection.getSectionSize()));
+        currentTable = new TableSection(0);
+        ByteBuffer entries = ByteBuffer.wrap(resumeFrom.getBytes(CHECKPOINT_TABLE)).order(ByteOrder.LITTLE_ENDIAN);
+        while (entries.hasRemaining()) {
+            int entry = entries.getInt();
+            currentTable.add(currentTable.getBaseOffset() + (entry & 0x7FFFFFFF), entry < 0);
+        }
+        outputs = (int) resumeFrom.getLong(CHECKPOINT_CHUNKS);
+        sectors = resumeFrom.getLong(CHECKPOINT_SECTORS);
+        // The reader only finds the bad sectors from the checkpoint on, so the ones before it must be carried over
+        // for the error2 section. This runs before reading begins.
+        badSectors.addAll(resumeFrom.getBytes(CHECKPOINT_BAD_SECTORS));
+        incompressibleSectors.addAll(resumeFrom.getBytes(CHECKPOINT_INCOMPRESSIBLE_SECTORS));
+        compressedChunks = resumeFrom.getLong(CHECKPOINT_COMPRESSED_CHUNKS);
+        storedChunks = resumeFrom.getLong(CHECKPOINT_STORED_CHUNKS);
+        incompressibleChunks = resumeFrom.getLong(CHECKPOINT_INCOMPRESSIBLE_CHUNKS);
+        Logging.log("Resuming image at segment " + fileNumber + ", sector " + sectors + ".", LogMessageType.USER);
+    }
+
+    private void recordCheckpoint() throws IOException {
+        currentOutputFile.getChannel().force(false);
+        List<Integer> tableEntries = currentTable.getArray();
+        ByteBuffer table;
+        synchronized (tableEntries) {
+            table = ByteBuffer.allocate(tableEntries.size() * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (Integer entry : tableEntries) {
+                table.putInt(entry);
+            }
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put(CHECKPOINT_SEGMENT, Integer.toString(fileNumber));
+        values.put(CHECKPOINT_SEGMENT_LENGTH, Long.toString(currentOutputFile.getFilePointer()));
+        values.put(CHECKPOINT_SECTORS_OFFSET, Long.toString(currentSectorsSection.getCurrentOffset()));
+        values.put(CHECKPOINT_SECTORS_SIZE, Long.toString(currentSectorsSection.getSectionSize()));
+        values.put(CHECKPOINT_TABLE, DatatypeConverter.printHexBinary(table.array()));
+        values.put(CHECKPOINT_CHUNKS, Integer.toString(outputs));
+        values.put(CHECKPOINT_SECTORS, Long.toString(sectors));
+        values.put(CHECKPOINT_GUID, DatatypeConverter.printHexBinary(volumeManager.getFileSetGuid()));
+        values.put(CHECKPOINT_DISK_SECTION, Long.toString(diskSectionOffset));
+        // The reader may already be past the checkpoint, sectors after it are found again on resume.
+        values.put(CHECKPOINT_BAD_SECTORS, DatatypeConverter.printHexBinary(badSectors.toBytes(sectors)));
+        values.put(CHECKPOINT_INCOMPRESSIBLE_SECTORS, DatatypeConverter.printHexBinary(incompressibleSectors.toBytes(sectors)));
+        values.put(CHECKPOINT_COMPRESSED_CHUNKS, Long.toString(compressedChunks));
+        values.put(CHECKPOINT_STORED_CHUNKS, Long.toString(storedChunks));
+        values.put(CHECKPOINT_INCOMPRESSIBLE_CHUNKS, Long.toString(incompressibleChunks));
+        checkpointWriter.record(CHECKPOINT_PART, sectors * sectorSize, values);
+    }
+
     private void beginSectorsSection() throws IOException {
         currentSectorsSection = new SectorsSection(currentOutputFile.getFilePointer());
         currentOutputFile.write(currentSectorsSection.getInitialHeader());
@@ -152,6 +337,7 @@ public class EWFOutput extends ProcessorBase {
     }
 
     private void writeDiskSection() throws IOException {
+        diskSectionOffset = currentOutputFile.getFilePointer();
         volumeManager.writePreliminaryDiskSection(currentOutputFile);
     }
 
@@ -185,26 +371,22 @@ public class EWFOutput extends ProcessorBase {
 
     private void writeError2Section() throws IOException {
         Error2Section error2Section = new Error2Section(currentOutputFile.getFilePointer());
-        ArrayList<Long> badSectors = DriveReader.getBadSectorsList();
-        int numBad = 0;
-        long badSectorStart = -1;
-        for (long badSector : badSectors) {
-            if (badSector - numBad == badSectorStart) {
-                numBad++;
-            }
-            else if (numBad != 0 && badSectorStart >= 0) {
-                error2Section.addEntry((int) badSectorStart, numBad); // Error2SectionEntry reqs int for sector #, information loss
-                numBad = 0;
-            }
-            else {
-                badSectorStart = badSector;
-                numBad = 1;
+        badSectors.forEachRange((firstSector, count) -> {
+            if (firstSector > Error2Section.MAX_SECTOR) {
+                unrecordedBadSectors += count;
+                return;
             }
+            long recordable = Math.min(count, Error2Section.MAX_SECTOR + 1 - firstSector);
+            error2Section.addEntry(firstSector, recordable);
+            unrecordedBadSectors += count - recordable;
+        });
+        if (unrecordedBadSectors > 0) {
+            Logging.log(unrecordedBadSectors + " bad sectors lie beyond the sector numbers an error2 section can hold, see the report for them.",
+                    LogMessageType.WARNING);
         }
-
+        byte[] entries = error2Section.getFullBytes(); // Need to do this first to get size information.
         currentOutputFile.write(error2Section.getFullHeader());
-        currentOutputFile.write(error2Section.getFullBytes());
-
+        currentOutputFile.write(entries);
     }
 
     @Override
@@ -221,39 +403,103 @@ public class EWFOutput extends ProcessorBase {
     protected void internalProcess() {
         try {
             while (isRunning && !Thread.currentThread().isInterrupted()) {
-                Future<DataChunk> toRead = chunkQueue.poll(5, TimeUnit.SECONDS);
-                if (toRead != null) {
-                    DataChunk chunk = toRead.get();
-                    if (chunk.originalSize == 0) {
-                        Logging.log("Final output count: " + sectors + " sectors", LogMessageType.DEBUG);
-                        finalizeFile();
-                        volumeManager.setVolumeSize(outputs, sectors);
-                        volumeManager.writeProperVolumeSections(true);
-                        writeReport();
-                        return;
+                long waitStart = System.nanoTime();
+                Future<DataChunk> toRead = chunkSource.poll(5, TimeUnit.SECONDS);
+                metrics.addInputWait(waitStart);
+                // Chunks are only handed on once compressed, so this never waits.
+                DataChunk chunk = toRead == null ? null : toRead.get();
+                if (chunk != null) {
+                    try {
+                        if (chunk.originalSize == 0) {
+                            Logging.log("Final output count: " + sectors + " sectors", LogMessageType.DEBUG);
+                            finalizeFile();
+                            volumeManager.setVolumeSize(outputs, sectors);
+                            volumeManager.writeProperVolumeSections(true);
+                            writeReport();
+                            return;
+                        }
+                        checkPosition(chunk);
+                        if (isSegmentFull()) {
+                            rollOverSegment();
+                        }
+                        addChunkToSegment(chunk);
+                        countChunk(chunk);
+                        metrics.addBytesProcessed(chunk.originalSize);
+                        outputs++;
+                        sectors += (chunk.originalSize / sectorSize);
+                        if (checkpointWriter != null && checkpointWriter.isCheckpoint(sectors * sectorSize)) {
+                            recordCheckpoint();
+                        }
+                        if (outputs % 10000 == 0) {
+                            Logging.log("Output: " + sectors + " sectors", LogMessageType.DEBUG);
+                        }
                     }
-                    if (isSegmentFull()) {
-                        finalizeSegment();
-                        createNewSegment();
-                        initializeSegment();
-                    }
-                    addChunkToSegment(chunk);
-                    outputs++;
-                    sectors += (chunk.originalSize / sectorSize);
-                    if (outputs % 10000 == 0) {
-                        Logging.log("Output: " + sectors + " sectors", LogMessageType.DEBUG);
+                    finally {
+                        // Written, or never will be.
+                        chunk.release();
                     }
                 }
             }
         }
-        catch (InterruptedException | ExecutionException | IOException e) {
+        catch (InterruptedException e) {
             Logging.log(e);
         }
+        catch (ExecutionException | IOException | RuntimeException e) {
+            // Without this stage nothing is imaged, so the whole acquisition stops rather than reading on.
+            fail(e);
+        }
+    }
+
+    @Override
+    protected void onExit() {
+        if (chunkSource != null) {
+            // Otherwise the compressor waits forever for room this stage will never make.
+            chunkSource.close();
+        }
+    }
+
+    /**
+     * Checks that the given chunk is the next part of the device, so that a stage that loses or reorders chunks
+     * stops the image rather than silently corrupting it.
+     * @throws IOException The chunk is not the next part of the device.
+     */
+    private void checkPosition(DataChunk chunk) throws IOException {
+        if (chunk.descriptor != null && chunk.descriptor.getOffset() != sectors * sectorSize) {
+            throw new IOException("Chunk " + chunk.descriptor + " arrived when sector " + sectors + " was expected, the image is incomplete.");
+        }
+    }
+
+    private void countChunk(DataChunk chunk) {
+        if (chunk.compressed) {
+            compressedChunks++;
+        }
+        else if (chunk.descriptor != null && chunk.descriptor.hasFlag(ChunkDescriptor.INCOMPRESSIBLE)) {
+            incompressibleChunks++;
+            incompressibleSectors.add(chunk.descriptor.getFirstSector(), chunk.descriptor.getSectorCount());
+        }
+        else {
+            storedChunks++;
+        }
+    }
+
+    private void writeCompressionReport() {
+        Logging.log("Chunks compressed: " + compressedChunks + ", stored after failing to compress: " + storedChunks
+                + ", stored as incompressible without compressing: " + incompressibleChunks + ".", LogMessageType.REPORT);
+        if (incompressibleSectors.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(incompressibleSectors.getSectorCount() + " sectors in "
+                + incompressibleSectors.getRangeCount() + " regions were stored as incompressible: \n");
+        incompressibleSectors.forEachRange((firstSector, count) -> {
+            sb.append(firstSector + "-" + (firstSector + count - 1) + "\n");
+        });
+        Logging.log(sb.toString(), LogMessageType.REPORT);
     }
 
     private void writeReport() {
         try {
             Logging.log("Output " + sectors + " of an expected " + (expectedSize / sectorSize) + " sectors.", LogMessageType.REPORT, LogMessageType.USER);
+            writeCompressionReport();
             Logging.log("Completed in " + Utils.getPrettyTime(Duration.between(startTime, LocalDateTime.now())), LogMessageType.REPORT, LogMessageType.USER);
             if (md5HashSource != null) {
                 Logging.log("MD5 Hash: " + DatatypeConverter.printHexBinary(md5HashSource.get(1, TimeUnit.SECONDS)), LogMessageType.REPORT,
@@ -302,12 +548,12 @@ public class EWFOutput extends ProcessorBase {
 
     private void writeChunk(DataChunk chunk) throws IOException {
         currentSectorsSection.add(chunk.size);
-        currentOutputFile.write(chunk.data);
+        currentOutputFile.write(chunk.data, 0, chunk.size);
     }
 
     private void createNewSegment() {
         fileNumber++;
-        File newOutputFile = new File(getNewFileName());
+        File newOutputFile = new File(getSegmentFileName(fileNumber));
         try {
             newOutputFile.createNewFile();
             currentOutputFile = new RandomAccessFile(newOutputFile, "rw");
@@ -320,14 +566,14 @@ public class EWFOutput extends ProcessorBase {
 
     }
 
-    private String getNewFileName() {
+    private String getSegmentFileName(int segment) {
         String fileString = outputFile.toString();
-        String suffix = "E" + (fileNumber > 99 ? convertFileNumber() : (fileNumber >= 10 ? fileNumber : ("0" + fileNumber)));
+        String suffix = "E" + (segment > 99 ? convertFileNumber(segment) : (segment >= 10 ? segment : ("0" + segment)));
         return fileString.substring(0, fileString.lastIndexOf(".")) + "." + suffix;
     }
 
-    private String convertFileNumber() {
-        int modifiedNumber = fileNumber - 100;
+    private String convertFileNumber(int segment) {
+        int modifiedNumber = segment - 100;
         char firstLetter = (char) (65 + modifiedNumber / 26);
         char secondLetter = (char) (65 + modifiedNumber % 26);
         return Character.toString(firstLetter) + Character.toString(secondLetter);
@@ -337,13 +583,39 @@ public class EWFOutput extends ProcessorBase {
         finalizeSectorsSection();
         writeTableSections();
         writeNextSection();
+        if (checkpointWriter != null) {
+            // Later checkpoints assume this segment is complete on disk.
+            currentOutputFile.getChannel().force(false);
+        }
         // currentOutputFile.close();
     }
 
+    private void rollOverSegment() throws IOException {
+        SegmentRolloverEvent event = new SegmentRolloverEvent();
+        event.begin();
+        finalizeSegment();
+        long finishedSize = currentOutputFile.getFilePointer();
+        createNewSegment();
+        initializeSegment();
+        if (event.shouldCommit()) {
+            event.segment = fileNumber;
+            event.finishedSize = finishedSize;
+            event.commit();
+        }
+    }
+
     private void writeTableSections() throws IOException {
+        TableFlushEvent event = new TableFlushEvent();
+        event.begin();
+        int entries = currentTable.getArray().size();
         currentTable.setCurrentOffset(currentSectorsSection.getNextOffset());
         writeTableSection();
         writeTable2Section();
+        if (event.shouldCommit()) {
+            event.segment = fileNumber;
+            event.entries = entries;
+            event.commit();
+        }
     }
 
     private void writeTableSection() throws IOException {
@@ -378,6 +650,9 @@ public class EWFOutput extends ProcessorBase {
         if (fileNumber == 1) {
             writeDataSection();
         }
+        if (!badSectors.isEmpty()) {
+            writeError2Section();
+        }
         writeHashSections();
         writeDoneSection();
         // currentOutputFile.close();
@@ -401,12 +676,10 @@ public class EWFOutput extends ProcessorBase {
     private void writeDigestSection() throws IOException, InterruptedException, ExecutionException {
         byte[] md5Hash = new byte[16];
         if (md5HashSource != null) {
-            md5HashSource.run(); // TODO: Better way of doing this?
             md5Hash = md5HashSource.get();
         }
         byte[] sha1Hash = new byte[20];
         if (sha1HashSource != null) {
-            sha1HashSource.run(); // TODO: Better way of doing this?
             sha1Hash = sha1HashSource.get();
         }
         DigestSection digestSection = new DigestSection(currentOutputFile.getFilePointer(), md5Hash, sha1Hash);
@@ -415,7 +688,6 @@ public class EWFOutput extends ProcessorBase {
     }
 
     private void writeHashSection() throws IOException, InterruptedException, ExecutionException {
-        md5HashSource.run(); // TODO: Better way of doing this?
         HashSection hashSection = new HashSection(currentOutputFile.getFilePointer(), md5HashSource.get());
         currentOutputFile.write(hashSection.getFullHeader());
         currentOutputFile.write(hashSection.getFullBytes());
@@ -0,0 +1,152 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * A fixed pool of worker threads shared by every acquisition, so that imaging several devices at once does not
+ * multiply the number of CPU bound threads. Work is submitted through a {@link Client}, one per processor. Each client
+ * has its own queue and the workers take one task from each client with work in turn, so a fast device cannot starve
+ * a slow one. Tasks of one client may run concurrently and complete out of order; callers that need ordering have
+ * each task publish its result to a sequence number {@link RingBuffer#claim() claimed} when it was submitted, as
+ * {@link ChunkedCompressor} does.
+ */
+public class FairExecutor {
+
+    private static final FairExecutor SHARED = new FairExecutor(Runtime.getRuntime().availableProcessors());
+    private final BlockingQueue<Client> readyClients = new LinkedBlockingQueue<>();
+    private final int threadCount;
+
+    /**
+     * Creates a new FairExecutor and starts its worker threads. The threads are daemon threads and are never stopped.
+     * @param threadCount The number of worker threads.
+     */
+    public FairExecutor(int threadCount) {
+        this.threadCount = threadCount;
+        // The workers belong to no acquisition, so they must not join the thread group of whoever created them.
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(group, () -> {runWorker();}, "FairExecutor" + (i > 0 ? i : ""));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Get the executor shared by all acquisitions, with one worker per available processor.
+     * @return The shared executor.
+     */
+    public static FairExecutor getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get the number of worker threads.
+     * @return The number of workers.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Creates a new client, which is given its own share of the workers.
+     * @return The client.
+     */
+    public Client newClient() {
+        return new Client();
+    }
+
+    private void runWorker() {
+        while (true) {
+            Runnable task;
+            try {
+                task = readyClients.take().next();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                Logging.log(e);
+            }
+        }
+    }
+
+    /**
+     * A queue of tasks that are run by the workers of a {@link FairExecutor}, taking turns with the other clients.
+     */
+    public class Client {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean isScheduled = false;
+
+        private Client() {
+        }
+
+        /**
+         * Queues the given task.
+         * @param task The task to run.
+         * @return A future for the result of the task.
+         */
+        public <T> Future<T> submit(Callable<T> task) {
+            FutureTask<T> future = new FutureTask<>(task);
+            execute(future);
+            return future;
+        }
+
+        /**
+         * Queues the given task.
+         * @param task The task to run.
+         */
+        public void execute(Runnable task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (isScheduled) {
+                    return;
+                }
+                isScheduled = true;
+            }
+            readyClients.add(this);
+        }
+
+        /**
+         * Removes every task that has not started yet.
+         * @return The removed tasks, so that the caller can release whatever they hold.
+         */
+        public synchronized List<Runnable> clear() {
+            List<Runnable> removed = new ArrayList<>(tasks);
+            tasks.clear();
+            return removed;
+        }
+
+        /**
+         * Takes the next task and, if there are more, goes to the back of the line for the next one.
+         */
+        private Runnable next() {
+            Runnable task;
+            boolean hasMore;
+            synchronized (this) {
+                task = tasks.poll();
+                hasMore = !tasks.isEmpty();
+                isScheduled = hasMore;
+            }
+            if (hasMore) {
+                readyClients.add(this);
+            }
+            return task == null ? () -> {} : task;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ciphertechsolutions.io.processing;
+
+/**
+ * An {@link IProcessor} that can read the buffers of a {@link ProcessorManager} straight from its read ring, at its
+ * own {@link RingBuffer.Cursor cursor}, rather than having each buffer handed to it through {@link #process(PooledBuffer)}.
+ * Every processor reads the same buffers, so there is no queue insertion or wrapper per processor. Each buffer taken
+ * from the cursor holds one reference for this processor, which must be {@link PooledBuffer#release() released} once
+ * finished with; a zero length buffer marks the end of input, in place of {@link #finish()}.
+ */
+public interface IFanOutProcessor extends IProcessor {
+
+    /**
+     * Makes this processor read its input from the given cursor. Must be called before {@link #initialize()}, after
+     * which neither {@link #process(PooledBuffer)} nor {@link #finish()} will be called.
+     * @param source The cursor to read from.
+     */
+    public void setSource(RingBuffer<PooledBuffer>.Cursor source);
+}
@@ -36,6 +36,34 @@ public interface IMediaReader extends AutoCloseable {
      */
     public byte[] getUnsafeBytes();
 
+    /**
+     * Get the bytes read by the last {@link #read} operation without copying them. One reference to the returned
+     * {@link PooledBuffer} passes to the caller, who must {@link PooledBuffer#release() release} it when done, and the
+     * {@link IMediaReader} will not modify the buffer again. This may be called at most once per {@link #read}.
+     * Implementations that cannot lend out their buffer fall back to wrapping {@link #getBytes}.
+     * @return The bytes read.
+     */
+    public default PooledBuffer leaseBuffer() {
+        return PooledBuffer.wrap(getBytes());
+    }
+
+    /**
+     * Leases the bytes read by the last {@link #read} operation as {@link #leaseBuffer()} does, with a
+     * {@link PooledBuffer#getDescriptor() descriptor} of where on the device they were read from, flagged if they
+     * contain {@link #getBadSectors() bad sectors}.
+     * @param sequence The number of buffers leased before this one.
+     * @return The bytes read.
+     */
+    public default PooledBuffer leaseChunk(long sequence) {
+        PooledBuffer buffer = leaseBuffer();
+        ChunkDescriptor descriptor = new ChunkDescriptor(getBytesRead() - buffer.length(), buffer.length(), sequence, 0);
+        if (getBadSectors().intersects(descriptor.getFirstSector(), descriptor.getSectorCount())) {
+            descriptor = new ChunkDescriptor(descriptor.getOffset(), descriptor.getLength(), sequence, ChunkDescriptor.BAD_SECTORS);
+        }
+        buffer.setDescriptor(descriptor);
+        return buffer;
+    }
+
     /**
      * Gets the total number of bytes read by this {@link IMediaReader} across all calls to {@link #read()}.
      * @return The total bytes read.
@@ -47,4 +75,24 @@ public interface IMediaReader extends AutoCloseable {
      * @return The default read size.
      */
     public int getReadSize();
+
+    /**
+     * Moves this {@link IMediaReader} so that the next {@link #read()} starts at the given position, and counts
+     * everything before it as read. Used to resume an interrupted acquisition, so must be called before the first
+     * read. Readers that cannot seek throw an IOException.
+     * @param position The position to continue reading from, in bytes.
+     * @throws IOException This reader cannot seek, or the seek failed.
+     */
+    public default void seek(long position) throws IOException {
+        throw new IOException(getClass().getSimpleName() + " does not support resuming.");
+    }
+
+    /**
+     * Get the sectors this {@link IMediaReader} could not read, and nulled instead. The set belongs to this reader and
+     * may still grow until reading has finished.
+     * @return The unreadable sectors.
+     */
+    public default SectorRangeSet getBadSectors() {
+        return new SectorRangeSet();
+    }
 }
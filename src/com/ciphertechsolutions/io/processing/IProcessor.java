@@ -13,6 +13,35 @@ public interface IProcessor extends IStoppable {
      */
     public void process(byte[] toProcess);
 
+    /**
+     * Process the given buffer. The processor is given one reference to the buffer and must
+     * {@link PooledBuffer#release() release} it once finished with the contents, which must not be modified.
+     * Buffers from {@link ProcessorManager} carry a {@link PooledBuffer#getDescriptor() descriptor} of where on the
+     * device they were read from.
+     * By default the contents are copied and passed to {@link #process(byte[])}; processors that can work
+     * directly from the shared buffer should override this to avoid the copy.
+     * @param toProcess
+     */
+    public default void process(PooledBuffer toProcess) {
+        byte[] copy = toProcess.copyBytes();
+        toProcess.release();
+        process(copy);
+    }
+
+    /**
+     * Process the given buffers, which are contiguous and in order. The processor is given one reference to each
+     * buffer and must {@link PooledBuffer#release() release} them as for {@link #process(PooledBuffer)}; the batch
+     * itself is shared and must not be modified. {@link ProcessorManager} hands over whatever the reader is ahead by
+     * in one batch, so processors that can handle several buffers per wakeup should override this. By default each
+     * buffer is passed to {@link #process(PooledBuffer)} in turn.
+     * @param toProcess
+     */
+    public default void process(BufferBatch toProcess) {
+        for (int i = 0; i < toProcess.size(); i++) {
+            process(toProcess.get(i));
+        }
+    }
+
     /**
      * This method will be called before {@link #process(byte[])} and can be used for any initialization needed.
      */
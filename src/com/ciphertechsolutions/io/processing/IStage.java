@@ -0,0 +1,31 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.Collection;
+
+/**
+ * An {@link IProcessor} that declares the data it consumes and produces, so that a {@link ProcessorGraph} can wire it
+ * to the other stages and run them in the right order. A stage whose inputs include {@link Port#RAW} is given the
+ * device data as any other processor is; its other inputs come from the stages producing them, which also deliver the
+ * end of input, so it is not sent {@link #finish()}.
+ */
+public interface IStage extends IProcessor {
+
+    /**
+     * Get the ports this stage consumes.
+     * @return The input ports.
+     */
+    public Collection<Port<?>> getInputs();
+
+    /**
+     * Get the ports this stage produces. Each port may only be produced by one stage.
+     * @return The output ports.
+     */
+    public Collection<Port<?>> getOutputs();
+
+    /**
+     * Provides this stage's outputs to the graph and subscribes to its inputs. Called once, in dependency order, so
+     * the stages producing this stage's inputs have already been connected. Must be called before {@link #initialize()}.
+     * @param graph The graph this stage belongs to.
+     */
+    public void connect(ProcessorGraph graph);
+}
@@ -0,0 +1,59 @@
+package com.ciphertechsolutions.io.processing;
+
+import javax.management.MXBean;
+
+/**
+ * The management interface of {@link StageMetrics}, as seen over JMX. Comparing the stages of an acquisition shows
+ * where it is bound: the stage that is busy while the others wait on it.
+ */
+@MXBean
+public interface IStageMetrics {
+
+    /**
+     * Get the name of the stage.
+     * @return The name.
+     */
+    public String getName();
+
+    /**
+     * Get the number of bytes of device data the stage has processed.
+     * @return The number of bytes.
+     */
+    public long getBytesProcessed();
+
+    /**
+     * Get the average rate the stage has processed device data at, since it started.
+     * @return The rate, in bytes per second.
+     */
+    public long getBytesPerSecond();
+
+    /**
+     * Get the number of items waiting in the stage's input queue.
+     * @return The queue depth.
+     */
+    public long getQueueDepth();
+
+    /**
+     * Get the time the stage has spent waiting for input. A stage that mostly waits for input is not the bottleneck.
+     * @return The time, in milliseconds.
+     */
+    public long getInputWaitMillis();
+
+    /**
+     * Get the time the stage has spent waiting for space downstream.
+     * @return The time, in milliseconds.
+     */
+    public long getOutputWaitMillis();
+
+    /**
+     * Get the CPU time used by the stage, including work it has run on the {@link FairExecutor}.
+     * @return The time, in milliseconds, or 0 if the JVM does not measure thread CPU time.
+     */
+    public long getCpuTimeMillis();
+
+    /**
+     * Get the number of bytes the stage has skipped to keep up. Only triage skips data.
+     * @return The number of bytes.
+     */
+    public long getBytesDropped();
+}
@@ -0,0 +1,138 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An implementation of {@link IMediaReader} for re-processing existing raw (dd) images. Rather than issuing a read
+ * call per chunk, the image is memory mapped in large windows and each {@link #read()} hands out a slice of the
+ * current window. The window is rolled forward as reading progresses, so images larger than 2GB are supported.
+ */
+public class MappedImageReader implements IMediaReader {
+
+    private static final int READ_SIZE = 512 * 256;
+    /**
+     * The size of each mapping. Must be a multiple of {@link #READ_SIZE} so that no read spans two windows.
+     */
+    private static final long WINDOW_SIZE = READ_SIZE * 2048l;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private final FileChannel channel;
+    private final long imageSize;
+    private final BufferPool bufferPool = new BufferPool(READ_SIZE, MAX_POOLED_BUFFERS);
+    private final byte[] unsafeBytes = new byte[READ_SIZE];
+    private MappedByteBuffer window;
+    private long windowStart;
+    private ByteBuffer slice;
+    private long bytesRead;
+
+    /**
+     * Constructs a MappedImageReader to read the raw image at the given path.
+     * @param toRead The path to the image to read.
+     * @throws IOException An irrecoverable exception occurred during IO.
+     */
+    public MappedImageReader(Path toRead) throws IOException {
+        channel = FileChannel.open(toRead, StandardOpenOption.READ);
+        imageSize = channel.size();
+        slice = ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (bytesRead >= imageSize) {
+            return -1;
+        }
+        if (window == null || bytesRead >= windowStart + window.capacity()) {
+            mapWindow(bytesRead);
+        }
+        int windowOffset = (int) (bytesRead - windowStart);
+        int length = Math.min(READ_SIZE, window.capacity() - windowOffset);
+        ByteBuffer view = window.duplicate();
+        view.position(windowOffset);
+        view.limit(windowOffset + length);
+        slice = view.slice();
+        bytesRead += length;
+        return length;
+    }
+
+    /**
+     * Maps the window beginning at the given offset. The previous window is dropped and will be unmapped once it
+     * is garbage collected.
+     * The JDK offers no way to pass madvise-style hints, so this relies on the operating system detecting
+     * the strictly sequential access pattern for read-ahead.
+     */
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, imageSize - start));
+    }
+
+    /**
+     * Get a read-only slice of the mapped image covering the bytes read by the last {@link #read} operation.
+     */
+    @Override
+    public ByteBuffer getBuffer() {
+        return slice;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] dest = new byte[slice.remaining()];
+        slice.duplicate().get(dest);
+        return dest;
+    }
+
+    @Override
+    public byte[] getUnsafeBytes() {
+        slice.duplicate().get(unsafeBytes, 0, slice.remaining());
+        return unsafeBytes;
+    }
+
+    /**
+     * Processors consume byte arrays, so the mapped slice is copied once into a pooled buffer. This replaces the
+     * copy the kernel would otherwise make for a read call.
+     */
+    @Override
+    public PooledBuffer leaseBuffer() {
+        PooledBuffer lease = bufferPool.acquire();
+        int length = slice.remaining();
+        slice.duplicate().get(lease.array(), 0, length);
+        lease.setLength(length);
+        return lease;
+    }
+
+    @Override
+    public void seek(long position) {
+        bytesRead = position;
+        window = null;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int getReadSize() {
+        return READ_SIZE;
+    }
+
+    /**
+     * Get the total size of the image being read.
+     * @return The image size, in bytes.
+     */
+    public long getImageSize() {
+        return imageSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        slice = ByteBuffer.allocate(0);
+        bufferPool.close();
+        channel.close();
+    }
+}
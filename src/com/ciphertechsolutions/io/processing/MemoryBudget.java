@@ -0,0 +1,121 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the bytes of every {@link PooledBuffer} in flight, across all acquisitions, against a single budget.
+ * New data is only admitted into a pipeline while there is headroom, see {@link #awaitHeadroom(long, TimeUnit)}, and
+ * best-effort stages such as triage skip data once the budget is under {@link #isUnderPressure() pressure}. Buffers
+ * already in a pipeline are always accounted for without waiting, as they are needed to drain it.
+ * <p>
+ * The limit is set once for the whole application, see {@link #setLimit(long)}. Each acquisition also
+ * {@link #requireAtLeast(long) requires} room for its fixed queues, so that a limit set too low cannot stop its
+ * pipeline from filling them.
+ */
+public class MemoryBudget {
+
+    private static final MemoryBudget SHARED = new MemoryBudget(Runtime.getRuntime().maxMemory() / 2);
+    private final AtomicLong inFlight = new AtomicLong();
+    private volatile long limit;
+    private volatile long minimum = 0;
+
+    /**
+     * Creates a new MemoryBudget.
+     * @param limit The number of bytes that may be in flight.
+     */
+    public MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Get the budget shared by all acquisitions. Defaults to half of the maximum heap.
+     * @return The shared budget.
+     */
+    public static MemoryBudget getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the number of bytes that may be in flight. The shared budget covers every acquisition, so this is set once
+     * by the application rather than by each acquisition.
+     * @param limit The new limit, in bytes.
+     */
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Raises the limit, if needed, to at least the given number of bytes. Lowering the limit later does not go below
+     * it.
+     * @param bytes The number of bytes that must fit in the budget.
+     * @return True if the limit had to be raised.
+     */
+    public synchronized boolean requireAtLeast(long bytes) {
+        boolean isRaised = bytes > getLimit();
+        if (bytes > minimum) {
+            minimum = bytes;
+        }
+        return isRaised;
+    }
+
+    /**
+     * Get the number of bytes that may be in flight.
+     * @return The limit, in bytes.
+     */
+    public long getLimit() {
+        return Math.max(limit, minimum);
+    }
+
+    /**
+     * Get the number of bytes currently in flight.
+     * @return The number of bytes.
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Accounts for bytes entering the pipeline. Never waits.
+     * @param bytes The number of bytes.
+     */
+    public void reserve(long bytes) {
+        inFlight.addAndGet(bytes);
+    }
+
+    /**
+     * Accounts for bytes leaving the pipeline.
+     * @param bytes The number of bytes.
+     */
+    public void release(long bytes) {
+        inFlight.addAndGet(-bytes);
+    }
+
+    /**
+     * Get whether three quarters of the budget are in use, at which point best-effort stages should skip data to leave
+     * the rest for the stages that cannot.
+     * @return True if the budget is under pressure.
+     */
+    public boolean isUnderPressure() {
+        return inFlight.get() >= getLimit() / 4 * 3;
+    }
+
+    /**
+     * Waits until the bytes in flight are within the budget.
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return True if there is headroom, false if there was none in time.
+     * @throws InterruptedException Interrupted while waiting.
+     */
+    public boolean awaitHeadroom(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlight.get() >= getLimit()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            // Buffers are released far too often to signal each one, the reader just checks back shortly.
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted byte array, usually leased from a {@link BufferPool}. Each holder of a reference must call
+ * {@link #release()} exactly once when it is done with the contents; once the last reference is released the array
+ * is returned to its pool and may be overwritten. The contents of a shared buffer must not be modified.
+ */
+public final class PooledBuffer {
+
+    private final byte[] data;
+    private final BufferPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private int length;
+    private ChunkDescriptor descriptor;
+
+    PooledBuffer(BufferPool pool, int capacity) {
+        this.data = new byte[capacity];
+        this.pool = pool;
+        this.length = 0;
+    }
+
+    private PooledBuffer(byte[] data) {
+        this.data = data;
+        this.pool = null;
+        this.length = data.length;
+    }
+
+    /**
+     * Wraps the given array in a {@link PooledBuffer} that does not belong to any pool. Releasing such a buffer
+     * has no effect, the array is simply left for the garbage collector.
+     * @param data The array to wrap.
+     * @return A buffer whose length is the length of the given array.
+     */
+    public static PooledBuffer wrap(byte[] data) {
+        return new PooledBuffer(data);
+    }
+
+    /**
+     * Get the array backing this buffer. Only the first {@link #length()} bytes are valid.
+     * @return The backing array.
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    /**
+     * Get the number of valid bytes in this buffer.
+     * @return The number of valid bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    void setLength(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Get where the contents of this buffer were read from.
+     * @return The descriptor, or null if this buffer was not read from a device, such as the end of input marker.
+     */
+    public ChunkDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    void setDescriptor(ChunkDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Adds a reference to this buffer. Each call must be balanced by a call to {@link #release()}.
+     * @return This buffer, for convenience.
+     */
+    public PooledBuffer retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Drops a reference to this buffer. The caller must not access the buffer after calling this method.
+     */
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        }
+        else if (remaining < 0) {
+            throw new IllegalStateException("PooledBuffer released more times than it was retained.");
+        }
+    }
+
+    /**
+     * Copies the valid bytes of this buffer into a new array. This does not release the buffer.
+     * @return A copy of the valid bytes.
+     */
+    public byte[] copyBytes() {
+        return Arrays.copyOf(data, length);
+    }
+
+    void reset() {
+        references.set(1);
+        length = 0;
+        descriptor = null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.concurrent.Future;
+
+import com.ciphertechsolutions.io.ewf.DataChunk;
+
+/**
+ * A named, typed kind of data that {@link IStage stages} of a {@link ProcessorGraph} produce and consume. A port
+ * carries either a stream, published through a {@link RingBuffer} that every consumer reads at its own cursor, or a
+ * single result, published as a {@link Future}.
+ *
+ * @param <T> The type of data carried.
+ */
+public final class Port<T> {
+
+    /**
+     * The data read from the device, delivered by the {@link ProcessorManager} rather than by a stage.
+     */
+    public static final Port<PooledBuffer> RAW = new Port<>("raw data");
+    /**
+     * The compressed chunks of the device, in order. A stream.
+     */
+    public static final Port<Future<DataChunk>> COMPRESSED = new Port<>("compressed chunks");
+    /**
+     * The MD5 hash of the device. A result.
+     */
+    public static final Port<byte[]> MD5 = new Port<>("MD5 hash");
+    /**
+     * The SHA1 hash of the device. A result.
+     */
+    public static final Port<byte[]> SHA1 = new Port<>("SHA1 hash");
+
+    private final String name;
+
+    /**
+     * Creates a new port. Ports are compared by identity, so each kind of data should have a single constant.
+     * @param name The name of the port, for error messages.
+     */
+    public Port(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,36 +1,116 @@
 package com.ciphertechsolutions.io.processing;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.ciphertechsolutions.io.logging.Logging;
 
 /**
  * Provides some of the basic functionality required to implement {@link IProcessor}. This implementation
- * assumes that the process will be spawning and managing child threads.
+ * assumes that the process will be spawning and managing child threads, which are either dedicated threads or, with
+ * {@link #setSharedThreads(boolean)}, borrowed from the {@link CarrierPool#getShared() shared carrier pool}.
  */
 public abstract class ProcessorBase implements IProcessor {
     protected boolean isRunning = true;
-    private final Thread[] threads;
+    private final CarrierPool.Carrier[] threads;
     private final String threadName;
+    private boolean useSharedThreads = false;
+    private final AtomicInteger runningThreads = new AtomicInteger();
+    private Runnable failureHandler = () -> {};
+    /**
+     * Where the input handed over so far ends, for describing input given without a descriptor. Only used by the
+     * thread handing over input.
+     */
+    private long nextInputOffset = 0;
+    private long nextInputSequence = 0;
+    protected final StageMetrics metrics;
 
     protected ProcessorBase(String threadName) {
-       threads = new Thread[getThreadCount()];
+       threads = new CarrierPool.Carrier[getThreadCount()];
        this.threadName = threadName;
+       this.metrics = new StageMetrics(threadName);
+    }
+
+    /**
+     * Get the metrics of this processor, which it updates as it runs.
+     * @return The metrics.
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets whether this processor's threads are borrowed from the {@link CarrierPool#getShared() shared carrier pool}
+     * rather than started for this processor alone. Must be called before {@link #initialize()}.
+     * @param useSharedThreads True to use the shared pool.
+     */
+    public void setSharedThreads(boolean useSharedThreads) {
+        this.useSharedThreads = useSharedThreads;
+    }
+
+    /**
+     * Sets what is done when this processor fails and cannot go on, such as stopping the acquisition it is part of.
+     * Must be called before {@link #initialize()}.
+     * @param failureHandler Called from the failing thread.
+     */
+    public void setFailureHandler(Runnable failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Logs the cause of a failure this processor cannot go on from, and calls the {@link #setFailureHandler(Runnable)
+     * failure handler}.
+     * @param cause The cause of the failure.
+     */
+    protected void fail(Throwable cause) {
+        Logging.log(cause);
+        failureHandler.run();
     }
 
     protected abstract int getThreadCount();
 
     protected abstract void internalProcess();
 
+    /**
+     * Called once every thread of this processor has returned from {@link #internalProcess()}, however it returned.
+     * Processors reading from a {@link RingBuffer} close their cursor here, so that one that stopped early does not
+     * hold back the producer forever.
+     */
+    protected void onExit() {
+    }
+
     protected void startThreads() {
+        runningThreads.set(getThreadCount());
         for (int i =0; i< getThreadCount(); i++)
         {
-            threads[i] = new Thread(() -> {internalProcess();}, threadName + (i > 0 ? i : ""));
-            threads[i].start();
+            String name = threadName + (i > 0 ? i : "");
+            if (useSharedThreads) {
+                threads[i] = CarrierPool.getShared().start(() -> {runThread();}, name);
+            }
+            else {
+                threads[i] = CarrierPool.startDedicated(() -> {runThread();}, name);
+            }
+        }
+    }
+
+    private void runThread() {
+        metrics.threadStarted();
+        try {
+            internalProcess();
+        }
+        finally {
+            metrics.threadEnded();
+            if (runningThreads.decrementAndGet() == 0) {
+                onExit();
+            }
         }
     }
 
     protected void waitForThreads() {
-        for (Thread thread : threads)
+        for (CarrierPool.Carrier thread : threads)
         {
+            if (thread == null) {
+                continue;
+            }
             try {
                 thread.join();
             }
@@ -57,9 +137,11 @@ public abstract class ProcessorBase implements IProcessor {
      */
     public void cancel(boolean wait) {
         isRunning = false;
-        for (Thread thread : threads)
+        for (CarrierPool.Carrier thread : threads)
         {
-            thread.interrupt();
+            if (thread != null) {
+                thread.interrupt();
+            }
         }
         if (wait) {
             waitForThreads();
@@ -71,4 +153,39 @@ public abstract class ProcessorBase implements IProcessor {
     public void stop() {
         cancel(false);
     }
+
+    /**
+     * Hands the given buffer to this processor's threads through the given ring, waiting while the ring is full so
+     * that a slow processor holds back the reader. If interrupted the buffer is dropped and released.
+     * @param ring The ring to publish to.
+     * @param toProcess The buffer to publish.
+     */
+    protected void handOff(RingBuffer<PooledBuffer> ring, PooledBuffer toProcess) {
+        ChunkDescriptor descriptor = toProcess.getDescriptor();
+        if (descriptor != null) {
+            nextInputOffset = descriptor.getEnd();
+            nextInputSequence = descriptor.getSequence() + 1;
+        }
+        try {
+            ring.put(toProcess);
+        }
+        catch (InterruptedException e) {
+            toProcess.release();
+            Thread.currentThread().interrupt();
+            Logging.log(e);
+        }
+    }
+
+    /**
+     * Wraps bytes given without a {@link ChunkDescriptor}, as by {@link #process(byte[])}, with a descriptor that
+     * follows on from the input handed over before them, so that they can be handled like any buffer read from the
+     * device.
+     * @param toProcess The bytes.
+     * @return A buffer holding the bytes, ready to be {@link #handOff(RingBuffer, PooledBuffer) handed off}.
+     */
+    protected PooledBuffer wrapInput(byte[] toProcess) {
+        PooledBuffer buffer = PooledBuffer.wrap(toProcess);
+        buffer.setDescriptor(new ChunkDescriptor(nextInputOffset, toProcess.length, nextInputSequence, 0));
+        return buffer;
+    }
 }
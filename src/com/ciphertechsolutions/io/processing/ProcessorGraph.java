@@ -0,0 +1,137 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Future;
+
+/**
+ * Wires {@link IStage stages} together by the {@link Port ports} they declare, rather than by hand. Building the graph
+ * checks that every input has exactly one producer and that there are no cycles, then connects the stages in
+ * dependency order: each producer publishes its output streams and results, and each consumer gets its own cursor on
+ * the streams it reads, so any number of stages can consume the same output without copies or extra threads.
+ */
+public class ProcessorGraph {
+
+    private final List<IStage> stages = new ArrayList<>();
+    private final Map<Port<?>, RingBuffer<?>> streams = new HashMap<>();
+    private final Map<Port<?>, Future<?>> results = new HashMap<>();
+    private boolean isBuilt = false;
+
+    /**
+     * Adds a stage. Must be called before {@link #build()}.
+     * @param stage The stage to add.
+     */
+    public void add(IStage stage) {
+        if (isBuilt) {
+            throw new IllegalStateException("Stages cannot be added once the graph is built.");
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * Orders and connects the stages.
+     * @return The stages, each after the stages producing its inputs.
+     * @throws IllegalStateException An input has no producer, a port has more than one producer, or the stages
+     *         depend on each other in a cycle.
+     */
+    public List<IStage> build() {
+        Map<Port<?>, IStage> producers = new HashMap<>();
+        for (IStage stage : stages) {
+            for (Port<?> output : stage.getOutputs()) {
+                IStage previous = producers.put(output, stage);
+                if (previous != null || output == Port.RAW) {
+                    throw new IllegalStateException("More than one stage produces " + output + ".");
+                }
+            }
+        }
+        Map<IStage, Integer> unmetInputs = new HashMap<>();
+        Map<IStage, List<IStage>> consumers = new HashMap<>();
+        Queue<IStage> ready = new ArrayDeque<>();
+        for (IStage stage : stages) {
+            int unmet = 0;
+            for (Port<?> input : stage.getInputs()) {
+                if (input == Port.RAW) {
+                    continue;
+                }
+                IStage producer = producers.get(input);
+                if (producer == null) {
+                    throw new IllegalStateException("Nothing produces " + input + ".");
+                }
+                consumers.computeIfAbsent(producer, key -> new ArrayList<>()).add(stage);
+                unmet++;
+            }
+            unmetInputs.put(stage, unmet);
+            if (unmet == 0) {
+                ready.add(stage);
+            }
+        }
+        List<IStage> ordered = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            IStage stage = ready.poll();
+            ordered.add(stage);
+            for (IStage consumer : consumers.getOrDefault(stage, new ArrayList<>())) {
+                if (unmetInputs.merge(consumer, -1, Integer::sum) == 0) {
+                    ready.add(consumer);
+                }
+            }
+        }
+        if (ordered.size() != stages.size()) {
+            throw new IllegalStateException("The processing stages depend on each other in a cycle.");
+        }
+        isBuilt = true;
+        for (IStage stage : ordered) {
+            stage.connect(this);
+        }
+        return ordered;
+    }
+
+    /**
+     * Publishes a stream output. Called by the producing stage from {@link IStage#connect(ProcessorGraph)}.
+     * @param port The port produced.
+     * @param stream The ring the stage publishes the stream to.
+     */
+    public <T> void provide(Port<T> port, RingBuffer<T> stream) {
+        streams.put(port, stream);
+    }
+
+    /**
+     * Publishes a result output. Called by the producing stage from {@link IStage#connect(ProcessorGraph)}.
+     * @param port The port produced.
+     * @param result The result, completed by the stage.
+     */
+    public <T> void provide(Port<T> port, Future<T> result) {
+        results.put(port, result);
+    }
+
+    /**
+     * Subscribes to a stream input. Called by a consuming stage from {@link IStage#connect(ProcessorGraph)}.
+     * @param port The port consumed.
+     * @return A new cursor on the stream, which sees every item.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RingBuffer<T>.Cursor subscribe(Port<T> port) {
+        RingBuffer<T> stream = (RingBuffer<T>) streams.get(port);
+        if (stream == null) {
+            throw new IllegalStateException(port + " is not a stream.");
+        }
+        return stream.newCursor();
+    }
+
+    /**
+     * Get a result input. Called by a consuming stage from {@link IStage#connect(ProcessorGraph)}.
+     * @param port The port consumed.
+     * @return The result.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> getResult(Port<T> port) {
+        Future<T> result = (Future<T>) results.get(port);
+        if (result == null) {
+            throw new IllegalStateException(port + " is not a result.");
+        }
+        return result;
+    }
+}
@@ -5,12 +5,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.applicationLogic.IStoppable;
 import com.ciphertechsolutions.io.applicationLogic.options.AdvancedOptions;
+import com.ciphertechsolutions.io.applicationLogic.options.CompressionTypesEnum;
 import com.ciphertechsolutions.io.device.Device;
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
@@ -18,10 +17,6 @@ import com.ciphertechsolutions.io.processing.digests.Md5Digest;
 import com.ciphertechsolutions.io.processing.digests.SHA1Digest;
 import com.ciphertechsolutions.io.processing.triage.MagicCarver;
 
-import javafx.beans.property.LongProperty;
-import javafx.beans.property.SimpleLongProperty;
-import javafx.beans.value.ChangeListener;
-
 /**
  * This class manages ION's imaging process.
  */
@@ -30,14 +25,38 @@ public class ProcessorManager implements IStoppable {
     private final IMediaReader toProcess;
     private final String baseFileName;
     private final List<IProcessor> processors;
-    private final BlockingQueue<byte[]> queue;
+    /**
+     * The processors that are handed each buffer by the processing loop, rather than reading the ring themselves.
+     */
+    private final List<IProcessor> handedOff = new ArrayList<>();
+    private int fanOutCount = 0;
+    private boolean hasThrottled = false;
+    /**
+     * The number of buffers the reader may get ahead of processing by. Together with the bounded queues of the
+     * processors this keeps memory use flat however slow the output is.
+     */
+    private static final int READ_QUEUE_CAPACITY = 32;
+    /**
+     * The most buffers handed to the processors in one {@link BufferBatch}.
+     */
+    private static final int MAX_BATCH_SIZE = READ_QUEUE_CAPACITY / 2;
+    private final RingBuffer<PooledBuffer> queue;
+    private final RingBuffer<PooledBuffer>.Cursor queueCursor;
     private boolean isRunning = true;
     private Device device;
     /**
-     * How much of {@link #toProcess} has been read.
+     * How much of {@link #toProcess} has been read. Only written by the processing thread; others poll it through
+     * {@link #getStatus()} rather than being called back, so that progress costs the processing thread nothing.
+     */
+    private volatile long status = 0;
+    /**
+     * Set once a processor has failed and processing was stopped because of it.
      */
-    private final LongProperty status;
+    private volatile boolean hasFailed = false;
     private final AdvancedOptions options;
+    private CheckpointWriter checkpointWriter;
+    private AcquisitionCheckpoint resumeFrom;
+    private final StageMetrics readerMetrics = new StageMetrics("DeviceReading");
 
     /**
      * Creates a new ProcessorManager to process the given device using the given IMediaReader.
@@ -55,15 +74,39 @@ public class ProcessorManager implements IStoppable {
         this.toProcess = toProcess;
         this.processors = new ArrayList<>(); // TODO: Thread safe list here instead?
         this.processors.addAll(Arrays.asList(processors));
-        this.queue = new LinkedBlockingQueue<>();
-        this.status = new SimpleLongProperty(0l);
+        this.queue = new RingBuffer<>(READ_QUEUE_CAPACITY);
+        this.queueCursor = queue.newCursor();
+        readerMetrics.setQueueDepth(() -> queueCursor.getLag());
         this.options = options;
         this.baseFileName = baseFileName;
     }
 
+    /**
+     * Enables periodic checkpoints of the default processors, optionally resuming an interrupted acquisition. Must be
+     * called before {@link #addDefaultProcessors()}.
+     * @param interval The number of bytes between checkpoints, a multiple of the compression chunk size.
+     * @param checkpoint The checkpoint to resume from, or null to start from the beginning. Its base file name must be
+     *        the one given to this ProcessorManager.
+     */
+    public void enableCheckpoints(long interval, AcquisitionCheckpoint checkpoint) {
+        this.checkpointWriter = new CheckpointWriter(baseFileName, device, interval);
+        if (checkpoint != null) {
+            try {
+                toProcess.seek(checkpoint.getOffset());
+                this.resumeFrom = checkpoint;
+                status = checkpoint.getOffset();
+            }
+            catch (IOException e) {
+                Logging.log("Unable to resume from the checkpoint, starting over.", LogMessageType.WARNING);
+                Logging.log(e);
+            }
+        }
+    }
+
     /**
      * Adds ION's default processing suite: {@link ChunkedCompressor compression}, {@link Md5Digest MD5 digest},
      * {@link SHA1Digest SHA1 digest}, {@link MagicCarver magic carving}, and {@link EWFOutput outputting to Encase6}.
+     * They are wired together by the {@link ProcessorGraph} when processing begins.
      */
     public void addDefaultProcessors() {
         ChunkedCompressor chunker = new ChunkedCompressor(options.getCompressionLevel());
@@ -73,9 +116,16 @@ public class ProcessorManager implements IStoppable {
         SHA1Digest shaDigest = new SHA1Digest();
         addProcessor(shaDigest);
         try {
-            addProcessor(new MagicCarver(toProcess.getReadSize()));
-            addProcessor(new EWFOutput(device, chunker.getOutputQueue(),
-                    new File(baseFileName + ".E01"), md5Digest.getDigestResult(), shaDigest.getDigestResult(), options));
+            MagicCarver carver = new MagicCarver(toProcess.getReadSize());
+            addProcessor(carver);
+            EWFOutput output = new EWFOutput(device, new File(baseFileName + ".E01"), options, toProcess.getBadSectors());
+            addProcessor(output);
+            if (checkpointWriter != null) {
+                md5Digest.setCheckpointing(checkpointWriter, resumeFrom);
+                shaDigest.setCheckpointing(checkpointWriter, resumeFrom);
+                carver.setCheckpointing(checkpointWriter, resumeFrom);
+                output.setCheckpointing(checkpointWriter, resumeFrom);
+            }
         }
         catch (IOException e) {
             Logging.log(e);
@@ -83,7 +133,8 @@ public class ProcessorManager implements IStoppable {
     }
 
     /**
-     * Adds the given {@link IProcessor processor} so that it will be run during {@link #process()}.
+     * Adds the given {@link IProcessor processor} so that it will be run during {@link #process()}. An {@link IStage}
+     * is connected to the stages producing its inputs, whatever order they are added in.
      * To have any impact this method must be called before {@link #process()} is called.
      * @param toAdd The {@link IProcessor processor} to add.
      */
@@ -109,56 +160,112 @@ public class ProcessorManager implements IStoppable {
     }
 
     /**
-     * Adds the given ChangeListener to listen on {@link #status} which records the progress in processing the IMediaReader.
-     * @param listener The listener to add.
+     * Get the progress in processing the IMediaReader. Safe to call from any thread.
+     * @return The number of bytes read, plus one once processing has finished.
      */
-    public void addProgressMonitor(ChangeListener<Number> listener) {
-        status.addListener(listener);
+    public long getStatus() {
+        return status;
     }
 
     /**
      * Processes the {@link IMediaReader} associated with this ProcessorManager using the associated {@link IProcessor IProcessors}.
      * {@link IProcessor#initialize()} will be called on all IProcessors, then reading from the IMediaReader will begin. Once
      * all data has been read, {@link IProcessor#finish()} will be called on all IProcessors, then {@link IProcessor#waitForExit()}
-     * will be called on all IProcessors.
+     * will be called on all IProcessors. In fan-out mode {@link IFanOutProcessor IFanOutProcessors} instead read every
+     * buffer from the read ring themselves, and see the end of input there. {@link IStage IStages} that do not read the
+     * device data are fed by the stages they depend on instead.
+     * @throws IllegalStateException The stages cannot be wired, see {@link ProcessorGraph#build()}.
      */
     public void process() {
+        buildGraph();
+        attachProcessors();
+        requireMemory();
+        for (IProcessor processor : processors) {
+            if (processor instanceof ProcessorBase) {
+                ((ProcessorBase) processor).setFailureHandler(() -> {onProcessorFailure();});
+            }
+        }
+        if (isSharedThreads()) {
+            for (IProcessor processor : processors) {
+                if (processor instanceof ProcessorBase) {
+                    ((ProcessorBase) processor).setSharedThreads(true);
+                }
+            }
+        }
         initializeProcessors();
-        Logging.log("Starting.", LogMessageType.USER);
+        registerMetrics();
+        Logging.log(resumeFrom == null ? "Starting." : "Resuming from byte " + resumeFrom.getOffset() + ".", LogMessageType.USER);
         logCaseInfo();
         logDeviceInfo();
         beginReading();
         long reads = 0l;
+        boolean reachedEnd = false;
         try {
+            List<PooledBuffer> taken = new ArrayList<>(MAX_BATCH_SIZE);
             while (isRunning && !Thread.currentThread().isInterrupted()) {
-                byte[] toRead = queue.poll(5, TimeUnit.SECONDS);
-                if (toRead != null) {
-                    if (toRead.length > 0) {
+                // Everything the reader is ahead by is handed over at once, so a processor that has fallen behind
+                // catches up with one wakeup.
+                taken.clear();
+                queueCursor.drainTo(taken, MAX_BATCH_SIZE, 5, TimeUnit.SECONDS);
+                BufferBatch batch = new BufferBatch(taken.size());
+                for (PooledBuffer toRead : taken) {
+                    if (toRead.length() > 0) {
                         reads++;
-                        status.set(status.get() + toRead.length);
+                        batch.add(toRead);
+                        status += toRead.length();
                         if (reads % 5000 == 0) {
-                            Logging.log("Read " + status.get() + " bytes.", LogMessageType.INFO);
-                        }
-                        for (IProcessor processor : processors) {
-                            processor.process(toRead);
+                            Logging.log("Read " + status + " bytes.", LogMessageType.INFO);
                         }
                     }
                     else {
+                        reachedEnd = true;
                         isRunning = false;
                     }
                 }
+                if (!batch.isEmpty()) {
+                    for (IProcessor processor : handedOff) {
+                        processor.process(batch.retain());
+                    }
+                    batch.release();
+                }
             }
         }
         catch (InterruptedException e) {
             Logging.log(e);
         }
-        for (IProcessor processor : processors) {
+        if (!reachedEnd) {
+            drainReadQueue();
+        }
+        // Stop holding back the reader, the fan-out processors still need it to deliver the end of input.
+        queueCursor.close();
+        for (IProcessor processor : handedOff) {
             processor.finish();
         }
         for (IProcessor processor : processors) {
             processor.waitForExit();
         }
-        status.set(status.get() + 1);
+        if (checkpointWriter != null && !hasFailed && toProcess.getBytesRead() >= device.getSize()) {
+            // Only a complete read finishes the acquisition, after an abort or read failure it can still be resumed.
+            checkpointWriter.delete();
+        }
+        unregisterMetrics();
+        status++;
+    }
+
+    /**
+     * Get whether processing was stopped because a processor failed, in which case the output is incomplete.
+     * @return True if a processor failed.
+     */
+    public boolean hasFailed() {
+        return hasFailed;
+    }
+
+    private void onProcessorFailure() {
+        if (!hasFailed) {
+            hasFailed = true;
+            Logging.log("A processor has failed, stopping the acquisition.", LogMessageType.ERROR);
+        }
+        stop();
     }
 
     private void logCaseInfo() {
@@ -176,7 +283,8 @@ public class ProcessorManager implements IStoppable {
         Logging.log("Compression algorithm: zlib DEFLATE", LogMessageType.REPORT, LogMessageType.USER);
         toLog = options.getCompressionLevelName();
         logIfAvailable("Compression Level: ", toLog);
-        toLog = "" + options.getCompressionLevel();
+        int level = options.getCompressionLevel();
+        toLog = level == CompressionTypesEnum.AUTO_LEVEL ? "chosen per chunk" : "" + level;
         logIfAvailable("Compression Level (numeric): ", toLog);
     }
 
@@ -191,15 +299,24 @@ public class ProcessorManager implements IStoppable {
         Logging.log(device.details(), LogMessageType.REPORT, LogMessageType.USER);
     }
 
+    private boolean isSharedThreads() {
+        return options != null && options.isSharedThreads();
+    }
+
     private void beginReading() {
-        Thread readingThread = new Thread((Runnable) () -> {
+        Runnable readingLoop = () -> {
+            readerMetrics.threadStarted();
             int read = 0;
+            long sequence = 0;
             while (isRunning && read >= 0) {
                 try {
+                    if (!awaitHeadroom()) {
+                        break;
+                    }
                     read = toProcess.read();
                     if (read > 0) {
-                        byte[] bytes = toProcess.getBytes();
-                        queue.add(bytes);
+                        readerMetrics.addBytesProcessed(read);
+                        publish(toProcess.leaseChunk(sequence++));
                     }
                 }
                 catch (IOException e1) {
@@ -207,15 +324,217 @@ public class ProcessorManager implements IStoppable {
                     Logging.log(e1);
                 }
             }
-            queue.add(new byte[0]);
+            publishEndOfInput();
             try {
                 toProcess.close();
             }
             catch (Exception e2) {
                 Logging.log(e2);
             }
-        } , "DeviceReading");
-        readingThread.start();
+            readerMetrics.threadEnded();
+        };
+        if (isSharedThreads()) {
+            CarrierPool.getShared().start(readingLoop, "DeviceReading");
+        }
+        else {
+            CarrierPool.startDedicated(readingLoop, "DeviceReading");
+        }
+    }
+
+    /**
+     * Makes sure the {@link MemoryBudget#getShared() shared memory budget} has room for the fixed queues of this
+     * acquisition: the read ring, a processor's queue of the same size, and the chunks of any compressors.
+     */
+    private void requireMemory() {
+        long required = 2L * READ_QUEUE_CAPACITY * toProcess.getReadSize();
+        for (IProcessor processor : processors) {
+            if (processor instanceof ChunkedCompressor) {
+                required += ((ChunkedCompressor) processor).getMaxBufferedBytes();
+            }
+        }
+        if (MemoryBudget.getShared().requireAtLeast(required)) {
+            Logging.log("Memory budget raised to " + (required >> 20) + "MB, the least this acquisition can run in.",
+                    LogMessageType.WARNING);
+        }
+    }
+
+    /**
+     * Waits for room in the {@link MemoryBudget#getShared() shared memory budget} before more is read, so that every
+     * acquisition on the machine together stays within it. Gives up if processing stops.
+     * @return True if reading may continue.
+     */
+    private boolean awaitHeadroom() {
+        MemoryBudget budget = MemoryBudget.getShared();
+        long waitStart = System.nanoTime();
+        try {
+            if (budget.awaitHeadroom(0, TimeUnit.SECONDS)) {
+                return true;
+            }
+            if (!hasThrottled) {
+                hasThrottled = true;
+                Logging.log("Memory budget of " + (budget.getLimit() >> 20) + "MB reached, reading paused until processing catches up.",
+                        LogMessageType.INFO);
+            }
+            while (!budget.awaitHeadroom(1, TimeUnit.SECONDS)) {
+                if (!isRunning) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch (InterruptedException e) {
+            Logging.log(e);
+            return false;
+        }
+        finally {
+            readerMetrics.addOutputWait(waitStart);
+        }
+    }
+
+    /**
+     * Publishes a buffer to the processing thread and the fan-out processors, with a reference for each, waiting while
+     * processing is behind. Gives up if processing stops.
+     */
+    private void publish(PooledBuffer buffer) {
+        for (int i = 0; i < fanOutCount; i++) {
+            buffer.retain();
+        }
+        long waitStart = System.nanoTime();
+        try {
+            while (!queue.offer(buffer, 1, TimeUnit.SECONDS)) {
+                if (!isRunning) {
+                    releaseAll(buffer);
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            releaseAll(buffer);
+            Logging.log(e);
+        }
+        finally {
+            readerMetrics.addOutputWait(waitStart);
+        }
+    }
+
+    /**
+     * Publishes the end of input marker. The processors only finish once they see it, so unlike data it is delivered
+     * even after a stop, waiting as long as it takes. Each processor closes its cursor when it exits, so one that has
+     * stopped cannot hold it back.
+     */
+    private void publishEndOfInput() {
+        PooledBuffer end = PooledBuffer.wrap(new byte[0]);
+        for (int i = 0; i < fanOutCount; i++) {
+            end.retain();
+        }
+        boolean isInterrupted = false;
+        while (true) {
+            try {
+                if (queue.offer(end, 1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            }
+            catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * After an abort, releases what the reader publishes until it stops, so those buffers do not stay charged to the
+     * memory budget.
+     */
+    private void drainReadQueue() {
+        try {
+            PooledBuffer toRelease;
+            while ((toRelease = queueCursor.poll(5, TimeUnit.SECONDS)) != null && toRelease.length() > 0) {
+                toRelease.release();
+            }
+        }
+        catch (InterruptedException e) {
+            Logging.log(e);
+        }
+    }
+
+    private void releaseAll(PooledBuffer buffer) {
+        for (int i = 0; i <= fanOutCount; i++) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Connects the {@link IStage stages} and orders them so that each comes after the stages it depends on, followed
+     * by the other processors.
+     */
+    private void buildGraph() {
+        ProcessorGraph graph = new ProcessorGraph();
+        List<IProcessor> others = new ArrayList<>();
+        for (IProcessor processor : processors) {
+            if (processor instanceof IStage) {
+                graph.add((IStage) processor);
+            }
+            else {
+                others.add(processor);
+            }
+        }
+        processors.clear();
+        processors.addAll(graph.build());
+        processors.addAll(others);
+    }
+
+    /**
+     * In fan-out mode, gives each {@link IFanOutProcessor} its own cursor on the read ring. The other processors that
+     * read the device data are handed each buffer by the processing loop.
+     */
+    private void attachProcessors() {
+        boolean fanOut = options != null && options.isFanOut();
+        for (IProcessor processor : processors) {
+            if (processor instanceof IStage && !((IStage) processor).getInputs().contains(Port.RAW)) {
+                continue;
+            }
+            if (fanOut && processor instanceof IFanOutProcessor) {
+                ((IFanOutProcessor) processor).setSource(queue.newCursor());
+                fanOutCount++;
+            }
+            else {
+                handedOff.add(processor);
+            }
+        }
+    }
+
+    /**
+     * Publishes the metrics of the reader and of each processor over JMX, under the name of this acquisition's
+     * output, for as long as processing runs.
+     */
+    private void registerMetrics() {
+        String acquisition = new File(baseFileName).getName();
+        for (StageMetrics metrics : getMetrics()) {
+            metrics.register(acquisition);
+        }
+    }
+
+    private void unregisterMetrics() {
+        for (StageMetrics metrics : getMetrics()) {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Get the metrics of the reader and of each processor that keeps them.
+     * @return The metrics, the reader's first.
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        metrics.add(readerMetrics);
+        for (IProcessor processor : processors) {
+            if (processor instanceof ProcessorBase) {
+                metrics.add(((ProcessorBase) processor).getMetrics());
+            }
+        }
+        return metrics;
     }
 
     private void initializeProcessors() {
@@ -224,8 +543,19 @@ public class ProcessorManager implements IStoppable {
         }
     }
 
+    /**
+     * Get the sectors that could not be read from the {@link IMediaReader} associated with this ProcessorManager.
+     * @return The unreadable sectors.
+     */
+    public SectorRangeSet getBadSectors() {
+        return toProcess.getBadSectors();
+    }
+
     @Override
     public void stop() {
         isRunning = false;
+        if (toProcess instanceof IStoppable) {
+            ((IStoppable) toProcess).stop();
+        }
     }
 }
@@ -0,0 +1,129 @@
+package com.ciphertechsolutions.io.processing;
+
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * Chooses the read request size for a {@link DriveReader}. When adaptive, each power of two size from
+ * {@link #MIN_READ_SIZE} to {@link #MAX_READ_SIZE} is tried in turn for a fixed number of bytes while the throughput
+ * and latency of the reads are measured. The size with the best throughput is then locked in for the rest of the
+ * acquisition. A larger size must beat a smaller one by a clear margin to be preferred, as it also costs latency.
+ */
+class ReadSizeController {
+
+    static final int DEFAULT_READ_SIZE = 512 * 256;
+    static final int MIN_READ_SIZE = 64 * 1024;
+    static final int MAX_READ_SIZE = 8 * 1024 * 1024;
+    private static final long TRIAL_BYTES = 16 * 1024 * 1024;
+    private static final int MIN_TRIAL_READS = 4;
+    /**
+     * How much faster a larger size must be to replace the current best.
+     */
+    private static final double REQUIRED_GAIN = 1.05;
+    /**
+     * Once a size is this much slower than the best, larger sizes are not tried.
+     */
+    private static final double GIVE_UP_RATIO = 0.85;
+
+    private final boolean adaptive;
+    private int trialSize;
+    private long trialBytes;
+    private long trialNanos;
+    private int trialReads;
+    private int bestSize = DEFAULT_READ_SIZE;
+    private double bestThroughput = 0;
+    private boolean locked;
+
+    /**
+     * @param adaptive If false, {@link #DEFAULT_READ_SIZE} is always used.
+     */
+    ReadSizeController(boolean adaptive) {
+        this.adaptive = adaptive;
+        this.locked = !adaptive;
+        this.trialSize = MIN_READ_SIZE;
+    }
+
+    /**
+     * Get the size of the next read.
+     * @return The read size, in bytes.
+     */
+    int getReadSize() {
+        return locked ? bestSize : trialSize;
+    }
+
+    /**
+     * Get the largest read size this controller may choose.
+     * @return The largest read size, in bytes.
+     */
+    int getMaxReadSize() {
+        return adaptive ? MAX_READ_SIZE : DEFAULT_READ_SIZE;
+    }
+
+    /**
+     * Records a completed read. Reads that were not of the size currently on trial are ignored.
+     * @param size The size requested.
+     * @param bytes The number of bytes read.
+     * @param nanos The time taken by the read.
+     */
+    void recordRead(int size, int bytes, long nanos) {
+        if (locked || size != trialSize || bytes != size) {
+            return;
+        }
+        trialBytes += bytes;
+        trialNanos += nanos;
+        trialReads++;
+        if (trialBytes >= TRIAL_BYTES && trialReads >= MIN_TRIAL_READS) {
+            finishTrial();
+        }
+    }
+
+    /**
+     * Called when a read of the given size failed outright. If the size was larger than the default and was being
+     * tried, the device is assumed not to support it, and the best size found so far is locked in.
+     * @param size The size that failed.
+     * @return True if the read should simply be retried with {@link #getReadSize()}, false if the failure should be
+     *         treated as a read error.
+     */
+    boolean rejectSize(int size) {
+        if (locked || size != trialSize || size <= DEFAULT_READ_SIZE) {
+            return false;
+        }
+        Logging.log("Reads of " + size + " bytes failed, no longer trying larger reads.", LogMessageType.DEBUG);
+        lock();
+        return true;
+    }
+
+    private void finishTrial() {
+        double throughput = trialBytes / (double) trialNanos;
+        Logging.log("Read size " + trialSize + ": " + formatThroughput(throughput) + ", " + formatLatency(trialNanos / trialReads),
+                LogMessageType.DEBUG);
+        boolean isWorse = throughput < bestThroughput * GIVE_UP_RATIO;
+        if (bestThroughput == 0 || throughput > bestThroughput * REQUIRED_GAIN) {
+            bestThroughput = throughput;
+            bestSize = trialSize;
+        }
+        trialBytes = 0;
+        trialNanos = 0;
+        trialReads = 0;
+        if (isWorse || trialSize >= MAX_READ_SIZE) {
+            lock();
+        }
+        else {
+            trialSize *= 2;
+        }
+    }
+
+    private void lock() {
+        locked = true;
+        Logging.log("Read size locked at " + bestSize + " bytes" + (bestThroughput > 0 ? " (" + formatThroughput(bestThroughput) + ")." : "."),
+                LogMessageType.INFO);
+    }
+
+    private static String formatThroughput(double bytesPerNano) {
+        return Math.round(bytesPerNano * 1000000000 / (1024 * 1024)) + " MB/s";
+    }
+
+    private static String formatLatency(long nanos) {
+        return (nanos / 1000) + " us per read";
+    }
+}
@@ -0,0 +1,221 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks which extents of a device have been recovered by a {@link RecoveryReader}, and persists that state so that an
+ * interrupted recovery can be resumed. The map is a sorted list of non-overlapping extents covering the whole device,
+ * each with one of the statuses below. The on-disk form is one "start length status" line per extent.
+ */
+class RecoveryMap {
+
+    /**
+     * Not yet read.
+     */
+    static final char UNTRIED = '?';
+    /**
+     * Read successfully.
+     */
+    static final char GOOD = '+';
+    /**
+     * Failed, or skipped over, during the first pass. Retried during the second pass.
+     */
+    static final char SKIPPED = '/';
+    /**
+     * Failed during the second pass, after all retries.
+     */
+    static final char BAD = '-';
+
+    private final long deviceSize;
+    private final List<Extent> extents = new ArrayList<>();
+
+    /**
+     * Creates a map with the whole device untried.
+     * @param deviceSize The size of the device, in bytes.
+     */
+    RecoveryMap(long deviceSize) {
+        this.deviceSize = deviceSize;
+        if (deviceSize > 0) {
+            extents.add(new Extent(0, deviceSize, UNTRIED));
+        }
+    }
+
+    /**
+     * Loads a map previously written by {@link #save(Path)}. If the file does not exist, or was written for a device
+     * of a different size, a fresh map is returned.
+     * @param mapFile The file to load.
+     * @param deviceSize The size of the device, in bytes.
+     * @return The loaded map.
+     * @throws IOException The map file could not be read.
+     */
+    static RecoveryMap load(Path mapFile, long deviceSize) throws IOException {
+        RecoveryMap map = new RecoveryMap(deviceSize);
+        if (!Files.exists(mapFile)) {
+            return map;
+        }
+        List<Extent> loaded = new ArrayList<>();
+        long expectedStart = 0;
+        try (BufferedReader reader = Files.newBufferedReader(mapFile, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                Extent extent = new Extent(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2].charAt(0));
+                if (extent.start != expectedStart) {
+                    return map;
+                }
+                expectedStart = extent.end();
+                loaded.add(extent);
+            }
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return map;
+        }
+        if (expectedStart == deviceSize) {
+            map.extents.clear();
+            map.extents.addAll(loaded);
+        }
+        return map;
+    }
+
+    /**
+     * Writes this map to the given file. The file is replaced atomically where the file system allows, so a crash
+     * during saving leaves the previous map intact.
+     * @param mapFile The file to write.
+     * @throws IOException The map file could not be written.
+     */
+    synchronized void save(Path mapFile) throws IOException {
+        Path tempFile = mapFile.resolveSibling(mapFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.US_ASCII)) {
+            writer.write("# start length status");
+            writer.newLine();
+            for (Extent extent : extents) {
+                writer.write(extent.start + " " + extent.length + " " + extent.status);
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(tempFile, mapFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            Files.move(tempFile, mapFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Sets the status of the given range, merging it with neighbouring extents of the same status.
+     * @param start The start of the range.
+     * @param length The length of the range.
+     * @param status The new status.
+     */
+    synchronized void mark(long start, long length, char status) {
+        long end = Math.min(start + length, deviceSize);
+        if (end <= start) {
+            return;
+        }
+        List<Extent> updated = new ArrayList<>(extents.size() + 2);
+        boolean inserted = false;
+        for (Extent extent : extents) {
+            if (extent.end() <= start || extent.start >= end) {
+                updated.add(extent);
+                continue;
+            }
+            if (extent.start < start) {
+                updated.add(new Extent(extent.start, start - extent.start, extent.status));
+            }
+            if (!inserted) {
+                updated.add(new Extent(start, end - start, status));
+                inserted = true;
+            }
+            if (extent.end() > end) {
+                updated.add(new Extent(end, extent.end() - end, extent.status));
+            }
+        }
+        extents.clear();
+        for (Extent extent : updated) {
+            Extent last = extents.isEmpty() ? null : extents.get(extents.size() - 1);
+            if (last != null && last.status == extent.status && last.end() == extent.start) {
+                extents.set(extents.size() - 1, new Extent(last.start, last.length + extent.length, last.status));
+            }
+            else {
+                extents.add(extent);
+            }
+        }
+    }
+
+    /**
+     * Finds the first extent with the given status that ends after the given position.
+     * @param status The status to look for.
+     * @param from The position to search from.
+     * @return The extent, clipped to begin no earlier than from, or null if there is none.
+     */
+    synchronized Extent findNext(char status, long from) {
+        for (Extent extent : extents) {
+            if (extent.status == status && extent.end() > from) {
+                long start = Math.max(from, extent.start);
+                return new Extent(start, extent.end() - start, status);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all extents with the given status.
+     * @param status The status to look for.
+     * @return The matching extents, in device order.
+     */
+    synchronized List<Extent> getExtents(char status) {
+        List<Extent> matching = new ArrayList<>();
+        for (Extent extent : extents) {
+            if (extent.status == status) {
+                matching.add(extent);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Get the total number of bytes with the given status.
+     * @param status The status to count.
+     * @return The number of bytes.
+     */
+    synchronized long getTotal(char status) {
+        long total = 0;
+        for (Extent extent : extents) {
+            if (extent.status == status) {
+                total += extent.length;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * An immutable range of the device with a single status.
+     */
+    static final class Extent {
+        final long start;
+        final long length;
+        final char status;
+
+        Extent(long start, long length, char status) {
+            this.start = start;
+            this.length = length;
+            this.status = status;
+        }
+
+        long end() {
+            return start + length;
+        }
+    }
+}
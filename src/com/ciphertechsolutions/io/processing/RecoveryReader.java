@@ -0,0 +1,288 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.ciphertechsolutions.io.applicationLogic.IStoppable;
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * An implementation of {@link IMediaReader} for failing drives, modelled on ddrescue. Before any data is handed out,
+ * the drive is copied to a local raw rescue image in two passes:
+ * <ol>
+ * <li>Everything readable is copied at full speed. When a read fails, the reader skips ahead, skipping further each
+ * time the next read also fails, so that one dying region does not hold up the healthy data after it.</li>
+ * <li>The skipped areas are then retried with small reads, and each unreadable sector is retried several times
+ * before it is given up on and left nulled.</li>
+ * </ol>
+ * Progress is kept in a {@link RecoveryMap} file beside the rescue image, so a crashed or interrupted recovery
+ * resumes where it stopped. The rescue image is a full, uncompressed copy of the drive, so its volume must have room
+ * for the whole drive, which is checked before recovery starts. Once recovery is complete, the rescue image is streamed to the processors through a
+ * {@link MappedImageReader}, and it is deleted when it has been read in full.
+ */
+public class RecoveryReader implements IMediaReader, IStoppable {
+
+    private static final int SECTOR_SIZE = 512;
+    private static final int FIRST_PASS_READ_SIZE = 512 * 256;
+    private static final int SECOND_PASS_READ_SIZE = 512 * 8;
+    private static final long MIN_SKIP_SIZE = 64 * 1024;
+    private static final long MAX_SKIP_SIZE = 64 * 1024 * 1024;
+    private static final long MAP_SAVE_INTERVAL_NANOS = 2000000000l;
+    private static final long PROGRESS_LOG_INTERVAL = 1024l * 1024 * 1024;
+    private final Path devicePath;
+    private final long deviceSize;
+    private final Path imageFile;
+    private final Path mapFile;
+    private final int retries;
+    private final RecoveryMap map;
+    private final SectorRangeSet badSectors = new SectorRangeSet();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(FIRST_PASS_READ_SIZE);
+    private MappedImageReader rescuedImage;
+    private long startPosition;
+    private long lastMapSave = System.nanoTime();
+    private volatile boolean isRunning = true;
+
+    /**
+     * Constructs a RecoveryReader for the drive at the given path. If a rescue image and map already exist at the
+     * given location, recovery resumes from them.
+     * @param toRead The path to the drive to read.
+     * @param deviceSize The size of the drive, in bytes.
+     * @param rescueBase The base path for the rescue image (".rescue.dd" is appended) and map (".rescue.map").
+     * @param retries The number of times to retry each sector during the second pass.
+     * @throws IOException The rescue map exists but could not be read, or there is not enough free space for the
+     *         rescue image.
+     */
+    public RecoveryReader(Path toRead, long deviceSize, Path rescueBase, int retries) throws IOException {
+        this.devicePath = toRead;
+        this.deviceSize = deviceSize;
+        this.imageFile = rescueBase.resolveSibling(rescueBase.getFileName() + ".rescue.dd");
+        this.mapFile = rescueBase.resolveSibling(rescueBase.getFileName() + ".rescue.map");
+        this.retries = Math.max(1, retries);
+        this.map = Files.exists(imageFile) ? RecoveryMap.load(mapFile, deviceSize) : new RecoveryMap(deviceSize);
+        checkFreeSpace();
+    }
+
+    /**
+     * Fails now, rather than when the volume fills partway through the rescue, if the rest of the rescue image will
+     * not fit. The image is sparse until written on most file systems, so only the data not yet rescued is counted.
+     */
+    private void checkFreeSpace() throws IOException {
+        long needed = deviceSize - map.getTotal(RecoveryMap.GOOD);
+        Path directory = imageFile.toAbsolutePath().getParent();
+        long usable = Files.getFileStore(directory).getUsableSpace();
+        if (usable < needed) {
+            throw new IOException("Recovery mode needs " + (needed >> 20) + "MB free in " + directory
+                    + " for the rescue image, a full copy of the drive, but only " + (usable >> 20) + "MB is available.");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (rescuedImage == null) {
+            if (!recover()) {
+                return -1;
+            }
+            for (RecoveryMap.Extent bad : map.getExtents(RecoveryMap.BAD)) {
+                long firstSector = bad.start / SECTOR_SIZE;
+                badSectors.add(firstSector, (bad.end() + SECTOR_SIZE - 1) / SECTOR_SIZE - firstSector);
+            }
+            rescuedImage = new MappedImageReader(imageFile);
+            rescuedImage.seek(startPosition);
+        }
+        return isRunning ? rescuedImage.read() : -1;
+    }
+
+    /**
+     * Runs whichever recovery passes are still outstanding.
+     * @return True if recovery completed, false if it was stopped.
+     */
+    private boolean recover() throws IOException {
+        if (map.getTotal(RecoveryMap.UNTRIED) == 0 && map.getTotal(RecoveryMap.SKIPPED) == 0) {
+            return true;
+        }
+        if (map.getTotal(RecoveryMap.GOOD) > 0) {
+            Logging.log("Resuming recovery from " + mapFile, LogMessageType.USER);
+        }
+        try (RandomAccessFile device = new RandomAccessFile(devicePath.toFile(), "r");
+             RandomAccessFile image = new RandomAccessFile(imageFile.toFile(), "rw")) {
+            image.setLength(deviceSize);
+            FileChannel source = device.getChannel();
+            FileChannel destination = image.getChannel();
+            runFirstPass(source, destination);
+            runSecondPass(source, destination);
+            destination.force(false);
+        }
+        finally {
+            map.save(mapFile);
+        }
+        if (!isRunning) {
+            Logging.log("Recovery stopped, it will resume from " + mapFile + " next time.", LogMessageType.USER);
+            return false;
+        }
+        Logging.log("Recovery complete: " + map.getTotal(RecoveryMap.BAD) / SECTOR_SIZE + " unreadable sectors.", LogMessageType.USER);
+        return true;
+    }
+
+    private void runFirstPass(FileChannel source, FileChannel destination) throws IOException {
+        Logging.log("Recovery pass 1: copying readable data.", LogMessageType.USER);
+        long skipSize = MIN_SKIP_SIZE;
+        long nextProgress = PROGRESS_LOG_INTERVAL;
+        RecoveryMap.Extent untried = map.findNext(RecoveryMap.UNTRIED, 0);
+        while (isRunning && untried != null) {
+            int length = (int) Math.min(FIRST_PASS_READ_SIZE, untried.length);
+            if (copy(source, destination, untried.start, length)) {
+                map.mark(untried.start, length, RecoveryMap.GOOD);
+                skipSize = MIN_SKIP_SIZE;
+                untried = map.findNext(RecoveryMap.UNTRIED, untried.start + length);
+            }
+            else {
+                long skipped = Math.max(length, Math.min(skipSize, untried.length));
+                map.mark(untried.start, skipped, RecoveryMap.SKIPPED);
+                Logging.log("Read error at byte " + untried.start + ", skipping " + skipped + " bytes.", LogMessageType.DEBUG);
+                skipSize = Math.min(skipSize * 2, MAX_SKIP_SIZE);
+                untried = map.findNext(RecoveryMap.UNTRIED, untried.start + skipped);
+            }
+            if (untried != null && untried.start >= nextProgress) {
+                Logging.log("Recovery pass 1: " + untried.start + " of " + deviceSize + " bytes.", LogMessageType.USER);
+                nextProgress = untried.start + PROGRESS_LOG_INTERVAL;
+            }
+            saveMapIfDue();
+        }
+    }
+
+    private void runSecondPass(FileChannel source, FileChannel destination) throws IOException {
+        if (!isRunning || map.getTotal(RecoveryMap.SKIPPED) == 0) {
+            return;
+        }
+        Logging.log("Recovery pass 2: retrying " + map.getTotal(RecoveryMap.SKIPPED) + " skipped bytes.", LogMessageType.USER);
+        RecoveryMap.Extent skipped = map.findNext(RecoveryMap.SKIPPED, 0);
+        while (isRunning && skipped != null) {
+            int length = (int) Math.min(SECOND_PASS_READ_SIZE, skipped.length);
+            if (copy(source, destination, skipped.start, length)) {
+                map.mark(skipped.start, length, RecoveryMap.GOOD);
+            }
+            else {
+                for (long sector = skipped.start; isRunning && sector < skipped.start + length; sector += SECTOR_SIZE) {
+                    retrySector(source, destination, sector);
+                }
+            }
+            skipped = map.findNext(RecoveryMap.SKIPPED, skipped.start + length);
+            saveMapIfDue();
+        }
+    }
+
+    private void retrySector(FileChannel source, FileChannel destination, long position) throws IOException {
+        int length = (int) Math.min(SECTOR_SIZE, deviceSize - position);
+        for (int attempt = 0; attempt < retries; attempt++) {
+            if (copy(source, destination, position, length)) {
+                map.mark(position, length, RecoveryMap.GOOD);
+                return;
+            }
+        }
+        Logging.log("Bad sector at sector #" + position / SECTOR_SIZE + " after " + retries + " attempts. Nulling sector.",
+                LogMessageType.WARNING);
+        map.mark(position, length, RecoveryMap.BAD);
+    }
+
+    /**
+     * Copies the given extent of the device to the same position in the rescue image.
+     * @return True if the whole extent was read, false if reading failed. Failures to write the image are thrown.
+     */
+    private boolean copy(FileChannel source, FileChannel destination, long position, int length) throws IOException {
+        readBuffer.clear();
+        readBuffer.limit(length);
+        try {
+            while (readBuffer.hasRemaining()) {
+                if (source.read(readBuffer, position + readBuffer.position()) < 0) {
+                    return false;
+                }
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            destination.write(readBuffer, position + readBuffer.position());
+        }
+        return true;
+    }
+
+    private void saveMapIfDue() throws IOException {
+        if (System.nanoTime() - lastMapSave > MAP_SAVE_INTERVAL_NANOS) {
+            map.save(mapFile);
+            lastMapSave = System.nanoTime();
+        }
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return rescuedImage.getBuffer();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return rescuedImage.getBytes();
+    }
+
+    @Override
+    public byte[] getUnsafeBytes() {
+        return rescuedImage.getUnsafeBytes();
+    }
+
+    @Override
+    public PooledBuffer leaseBuffer() {
+        return rescuedImage.leaseBuffer();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return rescuedImage == null ? startPosition : rescuedImage.getBytesRead();
+    }
+
+    /**
+     * Recovery itself always covers the whole drive, resuming from its own map, only streaming of the rescued
+     * image starts at the given position.
+     */
+    @Override
+    public void seek(long position) {
+        startPosition = position;
+    }
+
+    @Override
+    public int getReadSize() {
+        return FIRST_PASS_READ_SIZE;
+    }
+
+    @Override
+    public SectorRangeSet getBadSectors() {
+        return badSectors;
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rescuedImage == null) {
+            return;
+        }
+        boolean fullyRead = rescuedImage.getBytesRead() >= deviceSize;
+        rescuedImage.close();
+        rescuedImage = null;
+        if (fullyRead) {
+            // The image is a complete copy of the evidence, don't leave it lying around once it has been processed.
+            if (!imageFile.toFile().delete()) {
+                Logging.log("Unable to delete rescue image " + imageFile, LogMessageType.WARNING);
+            }
+            Files.deleteIfExists(mapFile);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, pre-allocated hand-off from a single producer to any number of consumers, in the style of the LMAX
+ * Disruptor. Items are published to consecutive sequence numbers and every {@link Cursor consumer} reads every item
+ * at its own pace. The producer can never get more than the capacity ahead of the slowest consumer, so a slow
+ * consumer throttles the producer instead of letting the backlog grow without limit.
+ * <p>
+ * Neither side takes a lock while there is data or space; the lock is only used to sleep and to wake sleepers.
+ * <p>
+ * Alternatively, the producer can {@link #claim() claim} sequence numbers in order and have any thread
+ * {@link #publish(long, Object) publish} to them as the items become ready. Consumers only see items once every
+ * earlier item has been published too, so results that complete out of order are handed on in order, a whole run at a
+ * time, and the claims bound the number of items in flight. A buffer must be fed one way or the other, not both.
+ *
+ * @param <T> The type of item handed off.
+ */
+public class RingBuffer<T> {
+
+    private static final int SPIN_TRIES = 100;
+    private final Object[] slots;
+    private final int mask;
+    private final CopyOnWriteArrayList<Cursor> cursors = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final Condition consumed = lock.newCondition();
+    private volatile int waitingConsumers = 0;
+    private volatile boolean isProducerWaiting = false;
+    /**
+     * The sequence of the last published item. Only written by the producer.
+     */
+    private volatile long publishedSequence = -1;
+    /**
+     * The sequence of the last claimed item. Only used by the producer.
+     */
+    private long claimedSequence = -1;
+    /**
+     * Which slots hold an item published out of order and not yet visible to consumers. Guarded by itself.
+     */
+    private final boolean[] isReady;
+
+    /**
+     * Creates a new RingBuffer.
+     * @param capacity The number of items the producer may be ahead of the slowest consumer, rounded up to a power
+     *        of two.
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new Object[size];
+        isReady = new boolean[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Get the capacity of this buffer.
+     * @return The capacity, a power of two.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds a consumer. It receives every item published after this call, so consumers should be added before the
+     * producer starts.
+     * @return The consumer's cursor.
+     */
+    public Cursor newCursor() {
+        Cursor cursor = new Cursor(publishedSequence + 1);
+        cursors.add(cursor);
+        return cursor;
+    }
+
+    /**
+     * Publishes the given item, waiting for space if needed. Only one thread may publish.
+     * @param item The item to publish.
+     * @throws InterruptedException Interrupted while waiting for space.
+     */
+    public void put(T item) throws InterruptedException {
+        while (!offer(item, 1, TimeUnit.SECONDS)) {
+            // Keep waiting.
+        }
+    }
+
+    /**
+     * Publishes the given item, waiting up to the given time for space. Only one thread may publish.
+     * @param item The item to publish.
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return True if the item was published, false if there was no space in time.
+     * @throws InterruptedException Interrupted while waiting for space.
+     */
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        long next = publishedSequence + 1;
+        if (!hasSpace(next)) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            if (!awaitSpace(next, deadline)) {
+                return false;
+            }
+        }
+        slots[(int) next & mask] = item;
+        publishedSequence = next;
+        if (waitingConsumers > 0) {
+            signal(published);
+        }
+        return true;
+    }
+
+    /**
+     * Claims the next sequence number, waiting for space if needed. Only one thread may claim, but the claimed item
+     * may be {@link #publish(long, Object) published} by any thread.
+     * @return The sequence number to publish the item to.
+     * @throws InterruptedException Interrupted while waiting for space.
+     */
+    public long claim() throws InterruptedException {
+        long sequence;
+        while ((sequence = claim(1, TimeUnit.SECONDS)) < 0) {
+            // Keep waiting.
+        }
+        return sequence;
+    }
+
+    /**
+     * Claims the next sequence number, waiting up to the given time for space. Only one thread may claim.
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return The sequence number to publish the item to, or -1 if there was no space in time.
+     * @throws InterruptedException Interrupted while waiting for space.
+     */
+    public long claim(long timeout, TimeUnit unit) throws InterruptedException {
+        long next = claimedSequence + 1;
+        if (!hasSpace(next) && !awaitSpace(next, System.nanoTime() + unit.toNanos(timeout))) {
+            return -1;
+        }
+        claimedSequence = next;
+        return next;
+    }
+
+    /**
+     * Publishes an item to a {@link #claim() claimed} sequence number. It is handed to the consumers once all of the
+     * items before it have been published. May be called from any thread, and never waits for space.
+     * @param sequence The claimed sequence number.
+     * @param item The item to publish.
+     */
+    public void publish(long sequence, T item) {
+        int index = (int) sequence & mask;
+        synchronized (isReady) {
+            slots[index] = item;
+            isReady[index] = true;
+            long next = publishedSequence + 1;
+            if (sequence != next) {
+                // Whoever publishes the item before it hands this one on too.
+                return;
+            }
+            while (isReady[(int) next & mask]) {
+                isReady[(int) next & mask] = false;
+                next++;
+            }
+            publishedSequence = next - 1;
+        }
+        if (waitingConsumers > 0) {
+            signal(published);
+        }
+        if (isProducerWaiting) {
+            // With no consumers, publishing is what frees space for the next claim.
+            signal(consumed);
+        }
+    }
+
+    /**
+     * Get how far the slowest consumer is behind the producer.
+     * @return The number of published items the slowest consumer has not taken yet.
+     */
+    public long getBacklog() {
+        long published = publishedSequence;
+        return Math.max(0, published + 1 - getMinimumSequence());
+    }
+
+    private boolean hasSpace(long next) {
+        return next - getMinimumSequence() < slots.length;
+    }
+
+    private long getMinimumSequence() {
+        long minimum = publishedSequence + 1;
+        for (Cursor cursor : cursors) {
+            minimum = Math.min(minimum, cursor.nextSequence);
+        }
+        return minimum;
+    }
+
+    private boolean awaitSpace(long next, long deadline) throws InterruptedException {
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            Thread.yield();
+            if (hasSpace(next)) {
+                return true;
+            }
+        }
+        lock.lockInterruptibly();
+        try {
+            isProducerWaiting = true;
+            while (!hasSpace(next)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                consumed.awaitNanos(remaining);
+            }
+            return true;
+        }
+        finally {
+            isProducerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One consumer's position in a {@link RingBuffer}. Each cursor must only be used by one thread.
+     */
+    public class Cursor {
+        private volatile long nextSequence;
+
+        private Cursor(long nextSequence) {
+            this.nextSequence = nextSequence;
+        }
+
+        /**
+         * Takes the next item, waiting up to the given time for one to be published.
+         * @param timeout How long to wait.
+         * @param unit The unit of the timeout.
+         * @return The item, or null if none was published in time.
+         * @throws InterruptedException Interrupted while waiting.
+         */
+        @SuppressWarnings("unchecked")
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long sequence = nextSequence;
+            if (sequence > publishedSequence && !awaitPublished(sequence, System.nanoTime() + unit.toNanos(timeout))) {
+                return null;
+            }
+            T item = (T) slots[(int) sequence & mask];
+            nextSequence = sequence + 1;
+            if (isProducerWaiting) {
+                signal(consumed);
+            }
+            return item;
+        }
+
+        /**
+         * Takes every item published so far, up to the given number, waiting up to the given time for the first. The
+         * producer is woken at most once for all of them, so a consumer that has fallen behind catches up with one
+         * wakeup rather than one per item.
+         * @param items The collection to add the items to, in order.
+         * @param maxItems The most items to take.
+         * @param timeout How long to wait for the first item.
+         * @param unit The unit of the timeout.
+         * @return The number of items taken, zero if none was published in time.
+         * @throws InterruptedException Interrupted while waiting.
+         */
+        @SuppressWarnings("unchecked")
+        public int drainTo(Collection<? super T> items, int maxItems, long timeout, TimeUnit unit) throws InterruptedException {
+            long sequence = nextSequence;
+            if (sequence > publishedSequence && !awaitPublished(sequence, System.nanoTime() + unit.toNanos(timeout))) {
+                return 0;
+            }
+            long last = Math.min(publishedSequence, sequence + maxItems - 1);
+            for (long next = sequence; next <= last; next++) {
+                items.add((T) slots[(int) next & mask]);
+            }
+            nextSequence = last + 1;
+            if (isProducerWaiting) {
+                signal(consumed);
+            }
+            return (int) (last + 1 - sequence);
+        }
+
+        /**
+         * Get how far this consumer is behind the producer.
+         * @return The number of published items this consumer has not taken yet.
+         */
+        public long getLag() {
+            return publishedSequence + 1 - nextSequence;
+        }
+
+        /**
+         * Get the capacity of the buffer this cursor reads from.
+         * @return The capacity.
+         */
+        public int getCapacity() {
+            return slots.length;
+        }
+
+        /**
+         * Removes this consumer, so that it no longer holds back the producer.
+         */
+        public void close() {
+            cursors.remove(this);
+            signal(consumed);
+        }
+
+        private boolean awaitPublished(long sequence, long deadline) throws InterruptedException {
+            for (int i = 0; i < SPIN_TRIES; i++) {
+                Thread.yield();
+                if (sequence <= publishedSequence) {
+                    return true;
+                }
+            }
+            lock.lockInterruptibly();
+            try {
+                waitingConsumers++;
+                while (sequence > publishedSequence) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    published.awaitNanos(remaining);
+                }
+                return true;
+            }
+            finally {
+                waitingConsumers--;
+                lock.unlock();
+            }
+        }
+    }
+}
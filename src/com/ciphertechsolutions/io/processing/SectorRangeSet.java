@@ -0,0 +1,211 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A set of sectors stored as sorted, non-overlapping, non-adjacent ranges in primitive arrays, so that a long run of
+ * bad sectors costs 16 bytes rather than one boxed Long per sector. Ranges are located by binary search, and adding
+ * sectors in increasing order, as the readers do, appends or extends the last range in constant time. Each
+ * {@link IMediaReader} owns its own set, so concurrent acquisitions do not share bad sectors.
+ */
+public class SectorRangeSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    /**
+     * Exclusive ends of the ranges.
+     */
+    private long[] ends = new long[INITIAL_CAPACITY];
+    private int rangeCount;
+    private long sectorCount;
+
+    /**
+     * Adds a single sector to this set.
+     * @param sector The sector to add.
+     */
+    public void add(long sector) {
+        add(sector, 1);
+    }
+
+    /**
+     * Adds a run of sectors to this set, merging it with any ranges it overlaps or touches.
+     * @param firstSector The first sector of the run.
+     * @param count The number of sectors in the run.
+     */
+    public synchronized void add(long firstSector, long count) {
+        if (count <= 0) {
+            return;
+        }
+        long end = firstSector + count;
+        int last = rangeCount - 1;
+        if (rangeCount == 0 || firstSector > ends[last]) {
+            insert(rangeCount, firstSector, end);
+            return;
+        }
+        if (firstSector >= starts[last]) {
+            if (end > ends[last]) {
+                sectorCount += end - ends[last];
+                ends[last] = end;
+            }
+            return;
+        }
+        // First range that ends at or after firstSector, and the last that starts at or before end. Every range
+        // between them overlaps or touches the new run.
+        int first = firstEndingAtOrAfter(firstSector);
+        int lastTouching = lastStartingAtOrBefore(end);
+        if (lastTouching < first) {
+            insert(first, firstSector, end);
+            return;
+        }
+        long mergedStart = Math.min(starts[first], firstSector);
+        long mergedEnd = Math.max(ends[lastTouching], end);
+        for (int i = first; i <= lastTouching; i++) {
+            sectorCount -= ends[i] - starts[i];
+        }
+        sectorCount += mergedEnd - mergedStart;
+        starts[first] = mergedStart;
+        ends[first] = mergedEnd;
+        int removed = lastTouching - first;
+        if (removed > 0) {
+            System.arraycopy(starts, lastTouching + 1, starts, first + 1, rangeCount - lastTouching - 1);
+            System.arraycopy(ends, lastTouching + 1, ends, first + 1, rangeCount - lastTouching - 1);
+            rangeCount -= removed;
+        }
+    }
+
+    /**
+     * Get whether the given sector is in this set.
+     * @param sector The sector to check.
+     * @return True if the sector is in this set.
+     */
+    public synchronized boolean contains(long sector) {
+        int index = firstEndingAtOrAfter(sector + 1);
+        return index < rangeCount && starts[index] <= sector;
+    }
+
+    /**
+     * Get whether any of the given run of sectors is in this set.
+     * @param firstSector The first sector of the run.
+     * @param count The number of sectors in the run.
+     * @return True if at least one sector of the run is in this set.
+     */
+    public synchronized boolean intersects(long firstSector, long count) {
+        int index = firstEndingAtOrAfter(firstSector + 1);
+        return index < rangeCount && starts[index] < firstSector + count;
+    }
+
+    /**
+     * Get the total number of sectors in this set.
+     * @return The number of sectors.
+     */
+    public synchronized long getSectorCount() {
+        return sectorCount;
+    }
+
+    /**
+     * Get the number of contiguous ranges in this set.
+     * @return The number of ranges.
+     */
+    public synchronized int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * Get whether this set is empty.
+     * @return True if there are no sectors in this set.
+     */
+    public synchronized boolean isEmpty() {
+        return rangeCount == 0;
+    }
+
+    /**
+     * Passes each contiguous range in this set to the given consumer, in increasing order.
+     * @param consumer The consumer to call.
+     */
+    public synchronized void forEachRange(RangeConsumer consumer) {
+        for (int i = 0; i < rangeCount; i++) {
+            consumer.accept(starts[i], ends[i] - starts[i]);
+        }
+    }
+
+    /**
+     * Get the ranges of this set below the given sector, in a form {@link #addAll(byte[])} can read back.
+     * @param endSector The first sector not to include. Any range reaching past it is cut short.
+     * @return The start and exclusive end of each range, as big-endian longs.
+     */
+    public synchronized byte[] toBytes(long endSector) {
+        ByteBuffer bytes = ByteBuffer.allocate(rangeCount * 16);
+        for (int i = 0; i < rangeCount && starts[i] < endSector; i++) {
+            bytes.putLong(starts[i]).putLong(Math.min(ends[i], endSector));
+        }
+        return Arrays.copyOf(bytes.array(), bytes.position());
+    }
+
+    /**
+     * Adds the ranges written by {@link #toBytes(long)} to this set.
+     * @param ranges The ranges to add.
+     */
+    public void addAll(byte[] ranges) {
+        ByteBuffer bytes = ByteBuffer.wrap(ranges);
+        while (bytes.remaining() >= 16) {
+            long start = bytes.getLong();
+            add(start, bytes.getLong() - start);
+        }
+    }
+
+    private int firstEndingAtOrAfter(long sector) {
+        int low = 0;
+        int high = rangeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < sector) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lastStartingAtOrBefore(long sector) {
+        int low = 0;
+        int high = rangeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= sector) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    private void insert(int index, long start, long end) {
+        if (rangeCount == starts.length) {
+            starts = Arrays.copyOf(starts, rangeCount * 2);
+            ends = Arrays.copyOf(ends, rangeCount * 2);
+        }
+        System.arraycopy(starts, index, starts, index + 1, rangeCount - index);
+        System.arraycopy(ends, index, ends, index + 1, rangeCount - index);
+        starts[index] = start;
+        ends[index] = end;
+        rangeCount++;
+        sectorCount += end - start;
+    }
+
+    /**
+     * Receives the ranges of a {@link SectorRangeSet}.
+     */
+    @FunctionalInterface
+    public interface RangeConsumer {
+        /**
+         * @param firstSector The first sector of the range.
+         * @param count The number of sectors in the range.
+         */
+        void accept(long firstSector, long count);
+    }
+}
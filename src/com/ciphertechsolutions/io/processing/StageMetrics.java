@@ -0,0 +1,227 @@
+package com.ciphertechsolutions.io.processing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.ciphertechsolutions.io.logging.LogMessageType;
+import com.ciphertechsolutions.io.logging.Logging;
+
+/**
+ * Counters describing one stage of an acquisition, published over JMX while it runs. The counters are
+ * {@link LongAdder LongAdders}, so the threads of a stage update them without contending; the rates and totals are
+ * only worked out when they are read.
+ */
+public class StageMetrics implements IStageMetrics {
+
+    private static final String DOMAIN = "com.ciphertechsolutions.io";
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean IS_CPU_TIME_SUPPORTED = enableCpuTime();
+    private final String name;
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder bytesDropped = new LongAdder();
+    private final LongAdder inputWaitNanos = new LongAdder();
+    private final LongAdder outputWaitNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    /**
+     * The CPU time of each running thread of this stage when it started working for it, by thread id.
+     */
+    private final Map<Long, Long> runningThreads = new ConcurrentHashMap<>();
+    private volatile LongSupplier queueDepth = () -> 0;
+    private volatile long startNanos = 0;
+    private volatile long endNanos = 0;
+    private ObjectName registeredName;
+
+    /**
+     * Creates a new StageMetrics.
+     * @param name The name of the stage.
+     */
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    private static boolean enableCpuTime() {
+        try {
+            if (THREADS.isThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the CPU time used by the current thread so far.
+     * @return The time, in nanoseconds, or 0 if it is not measured.
+     */
+    public static long getCurrentThreadCpuTime() {
+        return IS_CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Publishes these metrics over JMX, as
+     * <code>com.ciphertechsolutions.io:type=Stage,acquisition=&lt;acquisition&gt;,name=&lt;stage&gt;</code>.
+     * @param acquisition The name of the acquisition the stage belongs to.
+     */
+    public synchronized void register(String acquisition) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Stage,acquisition=" + ObjectName.quote(acquisition)
+                    + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        }
+        catch (JMException e) {
+            Logging.log("Unable to publish the metrics of " + name + ": " + e.getMessage(), LogMessageType.DEBUG);
+        }
+    }
+
+    /**
+     * Removes these metrics from JMX, if they were published.
+     */
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registeredName);
+        }
+        catch (JMException e) {
+            Logging.log(e);
+        }
+        registeredName = null;
+    }
+
+    /**
+     * Sets where the depth of the stage's input queue is read from.
+     * @param queueDepth Returns the number of items waiting.
+     */
+    public void setQueueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Marks the current thread as working for this stage until {@link #threadEnded()}, so its CPU time is counted.
+     */
+    public void threadStarted() {
+        if (startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
+        runningThreads.put(Thread.currentThread().getId(), getCurrentThreadCpuTime());
+    }
+
+    /**
+     * Marks the current thread as no longer working for this stage.
+     */
+    public void threadEnded() {
+        Long startCpu = runningThreads.remove(Thread.currentThread().getId());
+        if (startCpu != null) {
+            cpuNanos.add(getCurrentThreadCpuTime() - startCpu);
+        }
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Counts CPU time used for this stage by a thread not started for it, such as a {@link FairExecutor} worker.
+     * @param nanos The time, in nanoseconds.
+     */
+    public void addCpuTime(long nanos) {
+        cpuNanos.add(nanos);
+    }
+
+    /**
+     * Counts processed device data.
+     * @param bytes The number of bytes.
+     */
+    public void addBytesProcessed(long bytes) {
+        bytesProcessed.add(bytes);
+    }
+
+    /**
+     * Counts skipped device data.
+     * @param bytes The number of bytes.
+     */
+    public void addBytesDropped(long bytes) {
+        bytesDropped.add(bytes);
+    }
+
+    /**
+     * Counts time spent waiting for input.
+     * @param sinceNanos When the wait began, from {@link System#nanoTime()}.
+     */
+    public void addInputWait(long sinceNanos) {
+        inputWaitNanos.add(System.nanoTime() - sinceNanos);
+    }
+
+    /**
+     * Counts time spent waiting for space downstream.
+     * @param sinceNanos When the wait began, from {@link System#nanoTime()}.
+     */
+    public void addOutputWait(long sinceNanos) {
+        outputWaitNanos.add(System.nanoTime() - sinceNanos);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return bytesProcessed.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = runningThreads.isEmpty() && endNanos != 0 ? endNanos : System.nanoTime();
+        long elapsedMillis = Math.max(1, (end - start) / 1000000);
+        return bytesProcessed.sum() * 1000 / elapsedMillis;
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public long getInputWaitMillis() {
+        return inputWaitNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getOutputWaitMillis() {
+        return outputWaitNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getCpuTimeMillis() {
+        long nanos = cpuNanos.sum();
+        if (IS_CPU_TIME_SUPPORTED) {
+            for (Map.Entry<Long, Long> thread : runningThreads.entrySet()) {
+                long current = THREADS.getThreadCpuTime(thread.getKey());
+                if (current > 0) {
+                    nanos += current - thread.getValue();
+                }
+            }
+        }
+        return nanos / 1000000;
+    }
+
+    @Override
+    public long getBytesDropped() {
+        return bytesDropped.sum();
+    }
+}
@@ -2,75 +2,146 @@ package com.ciphertechsolutions.io.processing.digests;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.AcquisitionCheckpoint;
+import com.ciphertechsolutions.io.processing.CheckpointWriter;
+import com.ciphertechsolutions.io.processing.IFanOutProcessor;
+import com.ciphertechsolutions.io.processing.IStage;
+import com.ciphertechsolutions.io.processing.PooledBuffer;
+import com.ciphertechsolutions.io.processing.Port;
 import com.ciphertechsolutions.io.processing.ProcessorBase;
+import com.ciphertechsolutions.io.processing.ProcessorGraph;
+import com.ciphertechsolutions.io.processing.RingBuffer;
 
 /**
- * A class for computing digest hashes during imaging.
+ * A class for computing digest hashes during imaging. The hash is published to the {@link ProcessorGraph} as the
+ * {@link #getResultPort() result port} of the digest.
  */
-public abstract class DigestBase extends ProcessorBase implements Callable<byte[]> {
+public abstract class DigestBase extends ProcessorBase implements IFanOutProcessor, IStage {
 
     protected DigestBase(String threadName) {
         super(threadName);
+        metrics.setQueueDepth(() -> byteCursor.getLag());
     }
 
+    /**
+     * The number of buffers this digest may fall behind the reader by before it holds the reader back.
+     */
+    private static final int QUEUE_CAPACITY = 32;
+    /**
+     * The most buffers digested per wakeup.
+     */
+    private static final int MAX_BATCH_SIZE = QUEUE_CAPACITY / 2;
     private MessageDigest digest;
-    private final Object lock = new Object();
-    private volatile byte[] md5 = null;
-    private final BlockingQueue<byte[]> byteQueue = new LinkedBlockingQueue<>();
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    private final RingBuffer<PooledBuffer> byteQueue = new RingBuffer<>(QUEUE_CAPACITY);
+    private RingBuffer<PooledBuffer>.Cursor byteCursor = byteQueue.newCursor();
+    private CheckpointWriter checkpointWriter;
+    private AcquisitionCheckpoint resumeFrom;
+    private String stateKey;
+    private long bytesDigested;
 
     @Override
     public void initialize() {
         try {
-            digest = getDigest();
+            if (checkpointWriter != null) {
+                ResumableDigest resumable = getResumableDigest();
+                stateKey = resumable.getAlgorithm() + ".state";
+                if (resumeFrom != null) {
+                    resumable.restoreState(resumeFrom.getBytes(stateKey));
+                    bytesDigested = resumeFrom.getOffset();
+                }
+                checkpointWriter.register(stateKey);
+                digest = resumable;
+            }
+            else {
+                digest = getDigest();
+            }
             startThreads();
         }
-        catch (NoSuchAlgorithmException e) {
-            // What to do here?
+        catch (NoSuchAlgorithmException | RuntimeException e) {
             Logging.log(e);
+            result.completeExceptionally(e);
         }
     }
 
     protected abstract MessageDigest getDigest() throws NoSuchAlgorithmException;
 
+    /**
+     * Get a digest of the same algorithm as {@link #getDigest()} whose state can be checkpointed.
+     */
+    protected abstract ResumableDigest getResumableDigest();
+
+    /**
+     * Makes this digest record its state at every checkpoint, optionally continuing from an earlier checkpoint. This
+     * switches to {@link #getResumableDigest()}, which is slower than the JDK's digests. Must be called before
+     * {@link #initialize()}.
+     * @param writer The checkpoint writer to record to.
+     * @param resumeFrom The checkpoint to resume from, or null to start from the beginning.
+     */
+    public void setCheckpointing(CheckpointWriter writer, AcquisitionCheckpoint resumeFrom) {
+        this.checkpointWriter = writer;
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Get the port this digest's hash is published to.
+     */
+    protected abstract Port<byte[]> getResultPort();
+
     /**
      * Get the hash resulting from this digest. This method will return immediately, but accessing the contents of the
-     * {@link FutureTask} will block until the digest is complete.
-     * @return A {@link FutureTask} that will contain the hash upon completion.
+     * {@link Future} will block until the digest is complete.
+     * @return A {@link Future} that will contain the hash upon completion.
      */
-    public FutureTask<byte[]> getDigestResult() {
-        return new FutureTask<>(this);
+    public Future<byte[]> getDigestResult() {
+        return result;
     }
 
     @Override
-    public byte[] call() {
-        synchronized(lock) {
-            while (md5 == null) {
-                try {
-                    lock.wait(5000);
-                }
-                catch (InterruptedException e) {
-                    return null;
-                }
-            }
-            return md5;
-        }
+    public Collection<Port<?>> getInputs() {
+        return Collections.singleton(Port.RAW);
+    }
+
+    @Override
+    public Collection<Port<?>> getOutputs() {
+        return Arrays.asList(getResultPort());
+    }
+
+    @Override
+    public void connect(ProcessorGraph graph) {
+        graph.provide(getResultPort(), result);
     }
 
     @Override
     public void finish() {
-        byteQueue.add(new byte[0]);
+        handOff(byteQueue, PooledBuffer.wrap(new byte[0]));
     }
 
     @Override
     public void process(byte[] toProcess) {
-        byteQueue.add(toProcess);
+        handOff(byteQueue, PooledBuffer.wrap(toProcess));
+    }
+
+    @Override
+    public void process(PooledBuffer toProcess) {
+        handOff(byteQueue, toProcess);
+    }
+
+    @Override
+    public void setSource(RingBuffer<PooledBuffer>.Cursor source) {
+        byteCursor.close();
+        byteCursor = source;
     }
 
     @Override
@@ -80,27 +151,68 @@ public abstract class DigestBase extends ProcessorBase implements Callable<byte[
 
     @Override
     protected void internalProcess() {
+        List<PooledBuffer> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        int released = 0;
         try {
             while (isRunning && !Thread.currentThread().isInterrupted())
             {
-                byte[] toRead = byteQueue.poll(5, TimeUnit.SECONDS);
-                if (toRead != null) {
-                    if (toRead.length == 0)
+                long waitStart = System.nanoTime();
+                batch.clear();
+                released = 0;
+                byteCursor.drainTo(batch, MAX_BATCH_SIZE, 5, TimeUnit.SECONDS);
+                metrics.addInputWait(waitStart);
+                for (PooledBuffer toRead : batch) {
+                    if (toRead.length() == 0)
                     {
-                        synchronized(lock) {
-                            md5 = digest.digest();
-                            lock.notifyAll();
-                        }
+                        result.complete(digest.digest());
                         return;
                     }
-                    digest.update(toRead);
+                    if (checkpointWriter == null) {
+                        digest.update(toRead.array(), 0, toRead.length());
+                    }
+                    else {
+                        updateWithCheckpoints(toRead.array(), toRead.length());
+                    }
+                    metrics.addBytesProcessed(toRead.length());
+                    toRead.release();
+                    released++;
                 }
             }
         }
-        catch (InterruptedException e) {
+        catch (InterruptedException | RuntimeException e) {
             Logging.log(e);
+            result.completeExceptionally(e);
+        }
+        finally {
+            for (int i = released; i < batch.size(); i++) {
+                batch.get(i).release();
+            }
+            // Whoever waits on the hash must not wait forever for a digest that has stopped.
+            result.completeExceptionally(new CancellationException(getClass().getSimpleName() + " stopped before the end of the input."));
         }
+    }
 
+    @Override
+    protected void onExit() {
+        byteCursor.close();
+    }
+
+    /**
+     * Updates the digest, splitting the update at each checkpoint so that the state is recorded at exactly the
+     * checkpoint offset.
+     */
+    private void updateWithCheckpoints(byte[] bytes, int length) {
+        int offset = 0;
+        while (offset < length) {
+            long nextCheckpoint = (bytesDigested / checkpointWriter.getInterval() + 1) * checkpointWriter.getInterval();
+            int toUpdate = (int) Math.min(length - offset, nextCheckpoint - bytesDigested);
+            digest.update(bytes, offset, toUpdate);
+            offset += toUpdate;
+            bytesDigested += toUpdate;
+            if (checkpointWriter.isCheckpoint(bytesDigested)) {
+                checkpointWriter.record(stateKey, bytesDigested, stateKey, ((ResumableDigest) digest).exportState());
+            }
+        }
     }
 
 }
@@ -3,6 +3,8 @@ package com.ciphertechsolutions.io.processing.digests;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import com.ciphertechsolutions.io.processing.Port;
+
 /**
  * A class to compute the MD5 Digest of an input.
  */
@@ -19,4 +21,14 @@ public class Md5Digest extends DigestBase {
     protected MessageDigest getDigest() throws NoSuchAlgorithmException {
         return MessageDigest.getInstance("md5");
     }
+
+    @Override
+    protected ResumableDigest getResumableDigest() {
+        return new ResumableMd5();
+    }
+
+    @Override
+    protected Port<byte[]> getResultPort() {
+        return Port.MD5;
+    }
 }
@@ -0,0 +1,151 @@
+package com.ciphertechsolutions.io.processing.digests;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * A {@link MessageDigest} for 64 byte block hashes (MD5, SHA1) whose intermediate state can be exported and later
+ * restored, which the JDK implementations do not allow. This is what lets an interrupted acquisition resume hashing
+ * from a checkpoint rather than from the start of the drive.
+ */
+public abstract class ResumableDigest extends MessageDigest {
+
+    protected static final int BLOCK_SIZE = 64;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private long byteCount;
+    protected final int[] state;
+
+    protected ResumableDigest(String algorithm, int stateWords) {
+        super(algorithm);
+        state = new int[stateWords];
+        engineReset();
+    }
+
+    /**
+     * Sets {@link #state} to the initial values for this algorithm.
+     */
+    protected abstract void initState();
+
+    /**
+     * Processes one 64 byte block into {@link #state}.
+     */
+    protected abstract void processBlock(byte[] bytes, int offset);
+
+    /**
+     * Writes the length of the message, in bits, into the end of the final block.
+     */
+    protected abstract void putLength(byte[] finalBlock, long bitLength);
+
+    /**
+     * Writes {@link #state} out as the digest.
+     */
+    protected abstract byte[] stateToDigest();
+
+    /**
+     * Get the number of bytes hashed so far.
+     * @return The number of bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Exports the intermediate state of this digest.
+     * @return The state, to be passed to {@link #restoreState(byte[])}.
+     */
+    public byte[] exportState() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + state.length * 4 + blockLength);
+        buffer.putLong(byteCount);
+        for (int word : state) {
+            buffer.putInt(word);
+        }
+        buffer.put(block, 0, blockLength);
+        return buffer.array();
+    }
+
+    /**
+     * Restores a state previously returned by {@link #exportState()} on a digest of the same algorithm.
+     * @param exported The exported state.
+     * @throws IllegalArgumentException The state is not valid for this algorithm.
+     */
+    public void restoreState(byte[] exported) {
+        ByteBuffer buffer = ByteBuffer.wrap(exported);
+        if (exported.length < 8 + state.length * 4) {
+            throw new IllegalArgumentException("Invalid " + getAlgorithm() + " state.");
+        }
+        long count = buffer.getLong();
+        if (count < 0 || exported.length != 8 + state.length * 4 + (int) (count % BLOCK_SIZE)) {
+            throw new IllegalArgumentException("Invalid " + getAlgorithm() + " state.");
+        }
+        byteCount = count;
+        for (int i = 0; i < state.length; i++) {
+            state[i] = buffer.getInt();
+        }
+        blockLength = buffer.remaining();
+        buffer.get(block, 0, blockLength);
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        block[blockLength++] = input;
+        byteCount++;
+        if (blockLength == BLOCK_SIZE) {
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int length) {
+        byteCount += length;
+        if (blockLength > 0) {
+            int toCopy = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(input, offset, block, blockLength, toCopy);
+            blockLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            if (blockLength < BLOCK_SIZE) {
+                return;
+            }
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+        while (length >= BLOCK_SIZE) {
+            processBlock(input, offset);
+            offset += BLOCK_SIZE;
+            length -= BLOCK_SIZE;
+        }
+        System.arraycopy(input, offset, block, 0, length);
+        blockLength = length;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long bitLength = byteCount * 8;
+        byte[] finalBlock = new byte[BLOCK_SIZE];
+        System.arraycopy(block, 0, finalBlock, 0, blockLength);
+        finalBlock[blockLength] = (byte) 0x80;
+        if (blockLength >= BLOCK_SIZE - 8) {
+            processBlock(finalBlock, 0);
+            finalBlock = new byte[BLOCK_SIZE];
+        }
+        putLength(finalBlock, bitLength);
+        processBlock(finalBlock, 0);
+        byte[] result = stateToDigest();
+        engineReset();
+        return result;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return state.length * 4;
+    }
+
+    @Override
+    protected void engineReset() {
+        initState();
+        blockLength = 0;
+        byteCount = 0;
+    }
+}
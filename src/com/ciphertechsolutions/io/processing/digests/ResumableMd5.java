@@ -0,0 +1,98 @@
+package com.ciphertechsolutions.io.processing.digests;
+
+/**
+ * An MD5 implementation (RFC 1321) whose state can be checkpointed, see {@link ResumableDigest}.
+ */
+public class ResumableMd5 extends ResumableDigest {
+
+    private static final int[] SHIFTS = {
+        7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+        5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+        4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+        6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21 };
+    private static final int[] CONSTANTS = new int[64];
+
+    static {
+        for (int i = 0; i < 64; i++) {
+            CONSTANTS[i] = (int) (long) ((1l << 32) * Math.abs(Math.sin(i + 1)));
+        }
+    }
+
+    private final int[] words = new int[16];
+
+    /**
+     * Sole constructor.
+     */
+    public ResumableMd5() {
+        super("MD5", 4);
+    }
+
+    @Override
+    protected void initState() {
+        state[0] = 0x67452301;
+        state[1] = 0xefcdab89;
+        state[2] = 0x98badcfe;
+        state[3] = 0x10325476;
+    }
+
+    @Override
+    protected void processBlock(byte[] bytes, int offset) {
+        for (int i = 0; i < 16; i++, offset += 4) {
+            words[i] = (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+                    | (bytes[offset + 3] & 0xff) << 24;
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        // One loop per round, so the round function is not chosen on every step.
+        for (int i = 0; i < 16; i++) {
+            int rotated = b + Integer.rotateLeft(a + ((b & c) | (~b & d)) + CONSTANTS[i] + words[i], SHIFTS[i]);
+            a = d;
+            d = c;
+            c = b;
+            b = rotated;
+        }
+        for (int i = 16; i < 32; i++) {
+            int rotated = b + Integer.rotateLeft(a + ((d & b) | (~d & c)) + CONSTANTS[i] + words[(5 * i + 1) & 15], SHIFTS[i]);
+            a = d;
+            d = c;
+            c = b;
+            b = rotated;
+        }
+        for (int i = 32; i < 48; i++) {
+            int rotated = b + Integer.rotateLeft(a + (b ^ c ^ d) + CONSTANTS[i] + words[(3 * i + 5) & 15], SHIFTS[i]);
+            a = d;
+            d = c;
+            c = b;
+            b = rotated;
+        }
+        for (int i = 48; i < 64; i++) {
+            int rotated = b + Integer.rotateLeft(a + (c ^ (b | ~d)) + CONSTANTS[i] + words[(7 * i) & 15], SHIFTS[i]);
+            a = d;
+            d = c;
+            c = b;
+            b = rotated;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+    }
+
+    @Override
+    protected void putLength(byte[] finalBlock, long bitLength) {
+        for (int i = 0; i < 8; i++) {
+            finalBlock[BLOCK_SIZE - 8 + i] = (byte) (bitLength >>> (8 * i));
+        }
+    }
+
+    @Override
+    protected byte[] stateToDigest() {
+        byte[] digest = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            digest[i] = (byte) (state[i / 4] >>> (8 * (i % 4)));
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ciphertechsolutions.io.processing.digests;
+
+/**
+ * A SHA1 implementation (FIPS 180-4) whose state can be checkpointed, see {@link ResumableDigest}.
+ */
+public class ResumableSha1 extends ResumableDigest {
+
+    private final int[] words = new int[80];
+
+    /**
+     * Sole constructor.
+     */
+    public ResumableSha1() {
+        super("SHA-1", 5);
+    }
+
+    @Override
+    protected void initState() {
+        state[0] = 0x67452301;
+        state[1] = 0xefcdab89;
+        state[2] = 0x98badcfe;
+        state[3] = 0x10325476;
+        state[4] = 0xc3d2e1f0;
+    }
+
+    @Override
+    protected void processBlock(byte[] bytes, int offset) {
+        for (int i = 0; i < 16; i++, offset += 4) {
+            words[i] = (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8
+                    | (bytes[offset + 3] & 0xff);
+        }
+        for (int i = 16; i < 80; i++) {
+            words[i] = Integer.rotateLeft(words[i - 3] ^ words[i - 8] ^ words[i - 14] ^ words[i - 16], 1);
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        for (int i = 0; i < 20; i++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5a827999 + words[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 20; i < 40; i++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ed9eba1 + words[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 40; i < 60; i++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8f1bbcdc + words[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int i = 60; i < 80; i++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xca62c1d6 + words[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+    }
+
+    @Override
+    protected void putLength(byte[] finalBlock, long bitLength) {
+        for (int i = 0; i < 8; i++) {
+            finalBlock[BLOCK_SIZE - 1 - i] = (byte) (bitLength >>> (8 * i));
+        }
+    }
+
+    @Override
+    protected byte[] stateToDigest() {
+        byte[] digest = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            digest[i] = (byte) (state[i / 4] >>> (24 - 8 * (i % 4)));
+        }
+        return digest;
+    }
+}
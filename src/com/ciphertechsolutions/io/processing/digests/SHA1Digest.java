@@ -2,6 +2,8 @@ package com.ciphertechsolutions.io.processing.digests;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+
+import com.ciphertechsolutions.io.processing.Port;
 /**
  * A class to compute the SHA1 Digest of an input.
  */
@@ -19,4 +21,13 @@ public class SHA1Digest extends DigestBase {
         return MessageDigest.getInstance("SHA1");
     }
 
+    @Override
+    protected ResumableDigest getResumableDigest() {
+        return new ResumableSha1();
+    }
+
+    @Override
+    protected Port<byte[]> getResultPort() {
+        return Port.SHA1;
+    }
 }
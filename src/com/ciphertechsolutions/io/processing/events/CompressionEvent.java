@@ -0,0 +1,34 @@
+package com.ciphertechsolutions.io.processing.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for the compression of one chunk.
+ */
+@Name("com.ciphertechsolutions.io.Compression")
+@Label("Chunk Compression")
+@Category({ "ION", "Imaging" })
+@Description("The compression of one chunk of the image")
+public class CompressionEvent extends Event {
+
+    @Label("Input Size")
+    @DataAmount
+    public int inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    public int outputSize;
+
+    @Label("Compressed")
+    @Description("False if the chunk did not shrink and is stored uncompressed")
+    public boolean compressed;
+
+    @Label("Judged Incompressible")
+    @Description("True if the chunk was stored without trying to compress it, as sampling found it incompressible")
+    public boolean estimated;
+}
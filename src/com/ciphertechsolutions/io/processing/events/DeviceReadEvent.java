@@ -0,0 +1,34 @@
+package com.ciphertechsolutions.io.processing.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one read from a device. Its duration is the latency of the read.
+ */
+@Name("com.ciphertechsolutions.io.DeviceRead")
+@Label("Device Read")
+@Category({ "ION", "Imaging" })
+@Description("A read from the device being imaged")
+public class DeviceReadEvent extends Event {
+
+    @Label("Offset")
+    @Description("The offset into the device the read started at")
+    public long offset;
+
+    @Label("Requested Size")
+    @DataAmount
+    public int requestedSize;
+
+    @Label("Size Read")
+    @DataAmount
+    public int sizeRead;
+
+    @Label("Failed")
+    @Description("Whether the read failed and the extent was recovered sector by sector")
+    public boolean failed;
+}
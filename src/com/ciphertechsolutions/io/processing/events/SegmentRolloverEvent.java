@@ -0,0 +1,26 @@
+package com.ciphertechsolutions.io.processing.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for finishing one EWF segment file and starting the next.
+ */
+@Name("com.ciphertechsolutions.io.SegmentRollover")
+@Label("EWF Segment Rollover")
+@Category({ "ION", "Output" })
+@Description("Finishing an EWF segment file and starting the next")
+public class SegmentRolloverEvent extends Event {
+
+    @Label("Segment")
+    @Description("The number of the segment started")
+    public int segment;
+
+    @Label("Finished Segment Size")
+    @DataAmount
+    public long finishedSize;
+}
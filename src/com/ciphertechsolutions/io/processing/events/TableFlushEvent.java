@@ -0,0 +1,24 @@
+package com.ciphertechsolutions.io.processing.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for writing the table and table2 sections of an EWF segment.
+ */
+@Name("com.ciphertechsolutions.io.TableFlush")
+@Label("EWF Table Flush")
+@Category({ "ION", "Output" })
+@Description("Writing the chunk tables of an EWF segment")
+public class TableFlushEvent extends Event {
+
+    @Label("Segment")
+    public int segment;
+
+    @Label("Entries")
+    @Description("The number of chunks in the table")
+    public int entries;
+}
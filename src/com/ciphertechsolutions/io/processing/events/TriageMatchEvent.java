@@ -0,0 +1,34 @@
+package com.ciphertechsolutions.io.processing.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for one match found by triage. Matches can be very frequent, so unlike the other events
+ * this one is only recorded when the recording's settings enable it.
+ */
+@Name("com.ciphertechsolutions.io.TriageMatch")
+@Label("Triage Match")
+@Category({ "ION", "Triage" })
+@Description("A signature found by triage")
+@Enabled(false)
+public class TriageMatchEvent extends Event {
+
+    @Label("Processor")
+    public String processor;
+
+    @Label("Match")
+    public String match;
+
+    @Label("Offset")
+    @Description("The offset into the device the match was found at")
+    public long offset;
+
+    @Label("Sector")
+    @Description("The LBA of the sector the match was found in")
+    public long sector;
+}
@@ -1,5 +1,7 @@
 package com.ciphertechsolutions.io.processing.triage;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -38,17 +40,52 @@ public class ByteUtils {
         return result;
     }
 
+    /**
+     * Checks whether the given range consists of a single repeated byte, comparing eight bytes at a time.
+     * @param bytes The array to check.
+     * @param offset The start of the range.
+     * @param length The length of the range.
+     * @return The repeated byte as an unsigned value, or -1 if the range is empty or not a single repeated byte.
+     */
+    public static int getFillByte(byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            return -1;
+        }
+        byte fill = bytes[offset];
+        int end = offset + length;
+        int index = offset;
+        if (length >= 8) {
+            ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder());
+            long pattern = (fill & 0xFFL) * 0x0101010101010101L;
+            for (; index <= end - 8; index += 8) {
+                if (words.getLong(index) != pattern) {
+                    return -1;
+                }
+            }
+        }
+        for (; index < end; index++) {
+            if (bytes[index] != fill) {
+                return -1;
+            }
+        }
+        return fill & 0xFF;
+    }
+
     public static Map<Integer, String> printableSpansWithIndexes(byte[] bytes, int minLength, boolean filterRandom, int randomThreshold) {
+        return printableSpansWithIndexes(bytes, bytes.length, minLength, filterRandom, randomThreshold);
+    }
+
+    public static Map<Integer, String> printableSpansWithIndexes(byte[] bytes, int length, int minLength, boolean filterRandom, int randomThreshold) {
 
         Map<Integer, String> spanPairs = new HashMap<>();
-        int[] table = new int[bytes.length];
+        int[] table = new int[length];
         int tableSize = 0;
         int strStart, strSize;
         byte[] byteSpan;
         String span;
 
 
-        for (int i = 0; i < bytes.length; i++)
+        for (int i = 0; i < length; i++)
         {
             if (!isPrintable(bytes[i]))
             {
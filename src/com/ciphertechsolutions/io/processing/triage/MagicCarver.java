@@ -2,18 +2,33 @@ package com.ciphertechsolutions.io.processing.triage;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
+import javax.xml.bind.DatatypeConverter;
+
+import com.ciphertechsolutions.io.processing.AcquisitionCheckpoint;
+import com.ciphertechsolutions.io.processing.BufferBatch;
+import com.ciphertechsolutions.io.processing.CheckpointWriter;
+import com.ciphertechsolutions.io.processing.ChunkDescriptor;
+import com.ciphertechsolutions.io.processing.FairExecutor;
+import com.ciphertechsolutions.io.processing.PooledBuffer;
+import com.ciphertechsolutions.io.processing.StageMetrics;
+import com.ciphertechsolutions.io.processing.events.TriageMatchEvent;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.imaging.jpeg.JpegMetadataReader;
 import com.drew.metadata.Directory;
@@ -23,14 +38,21 @@ import com.drew.metadata.exif.ExifIFD0Directory;
 import com.drew.metadata.exif.GpsDescriptor;
 import com.drew.metadata.exif.GpsDirectory;
 
-import javafx.util.Pair;
-
 /**
- * A processor that guesses what types of files are present based on byte patterns found.
+ * A processor that guesses what types of files are present based on byte patterns found. The matching is done on the
+ * {@link FairExecutor#getShared() shared executor}, with at most one buffer in flight per worker so that the backlog
+ * stays where {@link TriageProcessorBase} can see it and skip ahead.
+ * <p>
+ * With checkpoints enabled, the file counts and GPS rows are recorded at each checkpoint, covering exactly the data
+ * before it. Batches are matched out of order, so a checkpoint is recorded once every batch before it has been
+ * matched, and each finding is held under the checkpoint interval it was found in until then.
  */
 public class MagicCarver extends TriageProcessorBase {
 
     private static final Map<String, byte[][]> DEFAULT_MAGICS = new TreeMap<>();
+    private static final String CHECKPOINT_PART = "carver";
+    private static final String CHECKPOINT_COUNTS = "carver.counts";
+    private static final String CHECKPOINT_GPS = "carver.gps";
 
     static {
         DEFAULT_MAGICS.put("ASF header",
@@ -115,6 +137,27 @@ public class MagicCarver extends TriageProcessorBase {
     private final Map<String, Integer> resultMap = Collections.synchronizedSortedMap(new TreeMap<>());
     private boolean wasGPSFound = false;
     private final String emptyGPS = "0\u00B0 0' 0\"";
+    private final FairExecutor.Client executor = FairExecutor.getShared().newClient();
+    private final int maxInFlight = FairExecutor.getShared().getThreadCount();
+    private final Semaphore inFlight = new Semaphore(maxInFlight);
+    private CheckpointWriter checkpointWriter;
+    private AcquisitionCheckpoint resumeFrom;
+    /**
+     * The offset of each batch being matched.
+     */
+    private final ConcurrentSkipListSet<Long> carving = new ConcurrentSkipListSet<>();
+    /**
+     * How far the carving thread has taken its input. Every batch before it has been skipped, matched, or is in
+     * {@link #carving}.
+     */
+    private volatile long takenThrough = 0;
+    /**
+     * The findings not yet recorded in a checkpoint, keyed by the index of the checkpoint interval they were found in.
+     * Guards itself and the fields below.
+     */
+    private final TreeMap<Long, Findings> pendingFindings = new TreeMap<>();
+    private final Findings recordedFindings = new Findings();
+    private long nextCheckpoint;
 
     /**
      * Sole constructor.
@@ -129,39 +172,172 @@ public class MagicCarver extends TriageProcessorBase {
     public void internalProcess() {
         try {
             while (isRunning && !Thread.currentThread().isInterrupted()) {
-                Pair<byte[], Long> toRead;
-                toRead = byteQueue.poll(5, TimeUnit.SECONDS);
-                if (toRead == null) {
-                    continue;
+                BufferBatch batch = takeBatch(BATCH_SIZE, 5, TimeUnit.SECONDS);
+                if (!batch.isEmpty() && !inFlight.tryAcquire()) {
+                    // Waiting for a worker would stop this carver's cursor and with it the reader, triage skips instead.
+                    skipBatch(batch);
+                }
+                else if (!batch.isEmpty()) {
+                    CarveTask task = new CarveTask(batch);
+                    carving.add(task.offset);
+                    executor.execute(task);
+                }
+                if (getTakenOffset() >= 0) {
+                    takenThrough = getTakenOffset();
+                    recordCheckpoints();
                 }
-                byte[] bytesToRead = toRead.getKey();
-                if (bytesToRead.length == 0) {
+                if (batch.isEndOfInput()) {
+                    // Wait for the batches still being matched, so the results are complete once this thread exits.
+                    inFlight.acquire(maxInFlight);
                     isRunning = false;
                     return;
                 }
-                matchThings(bytesToRead, toRead.getValue());
             }
         }
         catch (InterruptedException e) {
+            for (Runnable dropped : executor.clear()) {
+                ((CarveTask) dropped).discard();
+            }
             Logging.log(e);
             return;
         }
     }
 
+    /**
+     * Matches one batch on a worker of the shared executor. Holds the batch and a permit of {@link #inFlight} until it
+     * has run, or until it is {@link #discard() discarded} without running.
+     */
+    private class CarveTask implements Runnable {
+        private final BufferBatch batch;
+        private final long offset;
+
+        private CarveTask(BufferBatch batch) {
+            this.batch = batch;
+            this.offset = batch.getOffset(0);
+        }
+
+        @Override
+        public void run() {
+            long cpuStart = StageMetrics.getCurrentThreadCpuTime();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    matchThings(batch.get(i).array(), batch.get(i).length(), batch.getOffset(i));
+                }
+            }
+            finally {
+                discard();
+                carving.remove(offset);
+                recordCheckpoints();
+                metrics.addCpuTime(StageMetrics.getCurrentThreadCpuTime() - cpuStart);
+            }
+        }
+
+        /**
+         * Releases the batch and the permit. A task removed from the executor before it ran stays in {@link #carving},
+         * so that no checkpoint claims its batch was matched.
+         */
+        private void discard() {
+            batch.release();
+            inFlight.release();
+        }
+    }
+
     @Override
     public void initialize() {
         magics = DEFAULT_MAGICS;
         preprocess();
+        if (checkpointWriter != null) {
+            checkpointWriter.register(CHECKPOINT_PART);
+            nextCheckpoint = checkpointWriter.getInterval();
+            if (resumeFrom != null) {
+                restoreFindings();
+                takenThrough = resumeFrom.getOffset();
+                nextCheckpoint = resumeFrom.getOffset() + checkpointWriter.getInterval();
+            }
+        }
         startThreads();
     }
 
-    private void matchThings(byte[] toMatch, long offset) {
+    /**
+     * Makes this carver record its findings at every checkpoint, optionally continuing from those of an earlier
+     * checkpoint. Must be called before {@link #initialize()}.
+     * @param writer The checkpoint writer to record to.
+     * @param resumeFrom The checkpoint to resume from, or null to start from the beginning. Its GPS rows are written
+     *        out again, so the GPS output must be started afresh.
+     */
+    public void setCheckpointing(CheckpointWriter writer, AcquisitionCheckpoint resumeFrom) {
+        this.checkpointWriter = writer;
+        this.resumeFrom = resumeFrom;
+    }
+
+    private void restoreFindings() {
+        String counts = new String(resumeFrom.getBytes(CHECKPOINT_COUNTS), StandardCharsets.UTF_8);
+        for (String line : counts.split("\n")) {
+            int tab = line.lastIndexOf('\t');
+            if (tab > 0) {
+                recordedFindings.counts.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+            }
+        }
+        String gpsRows = new String(resumeFrom.getBytes(CHECKPOINT_GPS), StandardCharsets.UTF_8);
+        for (String row : gpsRows.split("\n")) {
+            if (!row.isEmpty()) {
+                recordedFindings.gpsRows.add(row);
+                Logging.logSimple(row, LogMessageType.GPS);
+            }
+        }
+        resultMap.putAll(recordedFindings.counts);
+        wasGPSFound = !recordedFindings.gpsRows.isEmpty();
+    }
+
+    /**
+     * Records a checkpoint for every checkpoint offset that all of the input before has been matched or skipped up to.
+     */
+    private void recordCheckpoints() {
+        if (checkpointWriter == null) {
+            return;
+        }
+        synchronized (pendingFindings) {
+            long carvedThrough = takenThrough;
+            Long firstCarving = carving.ceiling(Long.MIN_VALUE);
+            if (firstCarving != null) {
+                carvedThrough = Math.min(carvedThrough, firstCarving);
+            }
+            long interval = checkpointWriter.getInterval();
+            while (nextCheckpoint <= carvedThrough) {
+                Iterator<Findings> found = pendingFindings.headMap(nextCheckpoint / interval).values().iterator();
+                while (found.hasNext()) {
+                    recordedFindings.addAll(found.next());
+                    found.remove();
+                }
+                Map<String, String> values = new HashMap<>();
+                values.put(CHECKPOINT_COUNTS, DatatypeConverter.printHexBinary(recordedFindings.getCountBytes()));
+                values.put(CHECKPOINT_GPS, DatatypeConverter.printHexBinary(recordedFindings.getGpsBytes()));
+                checkpointWriter.record(CHECKPOINT_PART, nextCheckpoint, values);
+                nextCheckpoint += interval;
+            }
+        }
+    }
+
+    private Findings getPendingFindings(long offset) {
+        return pendingFindings.computeIfAbsent(offset / checkpointWriter.getInterval(), key -> new Findings());
+    }
+
+    private void countMatch(String resultName, long offset) {
+        resultMap.merge(resultName, new Integer(1), (A, B) -> A + 1);
+        if (checkpointWriter != null) {
+            synchronized (pendingFindings) {
+                getPendingFindings(offset).counts.merge(resultName, 1, (A, B) -> A + 1);
+            }
+        }
+    }
+
+    private void matchThings(byte[] toMatch, int length, long offset) {
         // TODO: Determine how much can be moved to helper functions without meaningful processing speed impact.
         List<MapAndOrStrings[]> potentialMatches = new ArrayList<>();
         List<MapAndOrStrings[]> nextMatches = new ArrayList<>();
         List<MapAndOrStrings[]> swap = new ArrayList<>();
         boolean clear = true;
-        for (int i = 0; i < toMatch.length; i++) {
+        for (int i = 0; i < length; i++) {
             int toFind = 0xff & toMatch[i];
             if (firstByteTest[toFind] || (!clear && byteTest[toFind])) {
                 if (clear) {
@@ -173,7 +349,7 @@ public class MagicCarver extends TriageProcessorBase {
                     MapAndOrStrings result = map[toFind];
                     if (result != null) {
                         if (!result.strings.isEmpty()) {
-                            recordResults(toMatch, i, result);
+                            recordResults(toMatch, length, i, result, offset);
                         }
                         MapAndOrStrings[] newMap = result.byteMapping;
                         if (newMap != null) {
@@ -192,30 +368,39 @@ public class MagicCarver extends TriageProcessorBase {
         }
     }
 
-    private void recordResults(byte[] toMatch, int i, MapAndOrStrings result) {
+    private void recordResults(byte[] toMatch, int length, int i, MapAndOrStrings result, long bufferOffset) {
         List<String> results = result.strings;
         List<Integer> offsets = result.stringOffsets;
         for (int resultIndex = 0; resultIndex < offsets.size(); resultIndex++) {
             String resultName = results.get(resultIndex);
+            TriageMatchEvent event = new TriageMatchEvent();
+            if (event.isEnabled()) {
+                event.processor = "MagicCarver";
+                event.match = resultName;
+                event.offset = bufferOffset + i - offsets.get(resultIndex);
+                event.sector = event.offset / ChunkDescriptor.SECTOR_SIZE;
+                event.commit();
+            }
+            long matchOffset = bufferOffset + i - offsets.get(resultIndex);
             if (resultName.equals("JPEG header")) {
-                getJpegData(toMatch, i, offsets, resultIndex);
+                getJpegData(toMatch, length, i, offsets, resultIndex, matchOffset);
             }
             if (resultName.equals("BMP header")) {
-                if (toMatch.length >= i + 10 && toMatch[i + 5] == 0 && toMatch[i + 6] == 0 && toMatch[i + 7] == 0 &&
+                if (length >= i + 10 && toMatch[i + 5] == 0 && toMatch[i + 6] == 0 && toMatch[i + 7] == 0 &&
                         toMatch[i + 8] == 0 && toMatch[i + 9] != 0) {
-                    resultMap.merge(results.get(resultIndex), new Integer(1), (A, B) -> A + 1);
+                    countMatch(resultName, matchOffset);
                 }
             }
             else {
-                resultMap.merge(results.get(resultIndex), new Integer(1), (A, B) -> A + 1);
+                countMatch(resultName, matchOffset);
             }
         }
     }
 
-    protected void getJpegData(byte[] toMatch, int i, List<Integer> offsets, int resultIndex) {
+    protected void getJpegData(byte[] toMatch, int length, int i, List<Integer> offsets, int resultIndex, long matchOffset) {
         try {
             Metadata reader = JpegMetadataReader
-                    .readMetadata(new ByteArrayInputStream(Arrays.copyOfRange(toMatch, i - offsets.get(resultIndex), toMatch.length)));
+                    .readMetadata(new ByteArrayInputStream(Arrays.copyOfRange(toMatch, i - offsets.get(resultIndex), length)));
             ExifIFD0Directory info = reader.getFirstDirectoryOfType(ExifIFD0Directory.class);
             String cameraMake = null;
             String cameraModel = null;
@@ -236,7 +421,7 @@ public class MagicCarver extends TriageProcessorBase {
                 gpsInfoDict.put("Timestamp: ", descriptor.getGpsTimeStampDescription());
 
                 if (notEmptyGPS(descriptor.getGpsLatitudeDescription(), descriptor.getGpsLongitudeDescription())) {
-                    logGPS(gpsInfoDict);
+                    logGPS(gpsInfoDict, matchOffset);
                     wasGPSFound = true;
                 }
 
@@ -273,7 +458,7 @@ public class MagicCarver extends TriageProcessorBase {
     /**
      * Logs GPS to CSV using logSimple()
      */
-    private void logGPS(Map<String, String> gpsInfoDict) {
+    private void logGPS(Map<String, String> gpsInfoDict, long matchOffset) {
         StringBuilder gpsBuilder = new StringBuilder();
         for (Entry<String, String> info : gpsInfoDict.entrySet()) {
             logTagIfAvailable(info.getKey(), info.getValue());
@@ -282,6 +467,11 @@ public class MagicCarver extends TriageProcessorBase {
         }
         gpsBuilder.deleteCharAt(gpsBuilder.length() - 1);
         Logging.logSimple(gpsBuilder.toString(), LogMessageType.GPS);
+        if (checkpointWriter != null) {
+            synchronized (pendingFindings) {
+                getPendingFindings(matchOffset).gpsRows.add(gpsBuilder.toString().replace('\n', ' '));
+            }
+        }
     }
 
     private void logTagIfAvailable(String baseString, String tag) {
@@ -336,7 +526,34 @@ public class MagicCarver extends TriageProcessorBase {
 
     @Override
     protected int getThreadCount() {
-        return 6;
+        return 1;
+    }
+
+    /**
+     * The file counts and GPS rows found in part of the device.
+     */
+    private static final class Findings {
+        private final Map<String, Integer> counts = new TreeMap<>();
+        private final List<String> gpsRows = new ArrayList<>();
+
+        private void addAll(Findings other) {
+            for (Map.Entry<String, Integer> entry : other.counts.entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), (A, B) -> A + B);
+            }
+            gpsRows.addAll(other.gpsRows);
+        }
+
+        private byte[] getCountBytes() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                sb.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private byte[] getGpsBytes() {
+            return String.join("\n", gpsRows).getBytes(StandardCharsets.UTF_8);
+        }
     }
 }
 
@@ -3,8 +3,8 @@ package com.ciphertechsolutions.io.processing.triage;
 import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.logging.Logging;
-
-import javafx.util.Pair;
+import com.ciphertechsolutions.io.processing.BufferBatch;
+import com.ciphertechsolutions.io.processing.PooledBuffer;
 
 /**
  * A processor that can find strings while imaging the drive.
@@ -41,19 +41,18 @@ public class StringCarver extends TriageProcessorBase {
         try {
             while (isRunning && !Thread.currentThread().isInterrupted())
             {
-                Pair<byte[], Long> toRead;
-                toRead = byteQueue.poll(5, TimeUnit.SECONDS);
-                if (toRead == null) {
-                    continue;
+                BufferBatch batch = takeBatch(BATCH_SIZE, 5, TimeUnit.SECONDS);
+                for (int i = 0; i < batch.size(); i++) {
+                    PooledBuffer bytesToRead = batch.get(i);
+                    ByteUtils.printableSpansWithIndexes(bytesToRead.array(), bytesToRead.length(), DEFAULT_STRING_LENGTH, false, DEFAULT_RANDOM_THRESHOLD);
+                    // TODO: What to do with this?
                 }
-                byte[] bytesToRead = toRead.getKey();
-                if (bytesToRead.length == 0)
+                batch.release();
+                if (batch.isEndOfInput())
                 {
                     isRunning = false;
                     return;
                 }
-                ByteUtils.printableSpansWithIndexes(bytesToRead, DEFAULT_STRING_LENGTH, false, DEFAULT_RANDOM_THRESHOLD);
-                // TODO: What to do with this?
             }
         } catch (InterruptedException e) {
             Logging.log(e);
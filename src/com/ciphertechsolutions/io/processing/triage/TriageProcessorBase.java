@@ -1,27 +1,48 @@
 package com.ciphertechsolutions.io.processing.triage;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.ciphertechsolutions.io.logging.LogMessageType;
 import com.ciphertechsolutions.io.logging.Logging;
+import com.ciphertechsolutions.io.processing.BufferBatch;
+import com.ciphertechsolutions.io.processing.ChunkDescriptor;
+import com.ciphertechsolutions.io.processing.IFanOutProcessor;
+import com.ciphertechsolutions.io.processing.IStage;
+import com.ciphertechsolutions.io.processing.MemoryBudget;
+import com.ciphertechsolutions.io.processing.PooledBuffer;
+import com.ciphertechsolutions.io.processing.Port;
 import com.ciphertechsolutions.io.processing.ProcessorBase;
-
-import javafx.util.Pair;
+import com.ciphertechsolutions.io.processing.ProcessorGraph;
+import com.ciphertechsolutions.io.processing.RingBuffer;
 
 /**
- * Provides basic processing functionality to make implementing triaging classes easier.
+ * Provides basic processing functionality to make implementing triaging classes easier. Triage is allowed to skip
+ * data: when it falls too far behind the reader it drops buffers rather than holding the reader back. Input is read
+ * with {@link #takeBatch(int, long, TimeUnit)}, from a single thread.
  *
  */
-public abstract class TriageProcessorBase extends ProcessorBase {
+public abstract class TriageProcessorBase extends ProcessorBase implements IFanOutProcessor, IStage {
+    /**
+     * Set to 64MB. Triage is allowed to skip data, so its backlog is kept small enough that it cannot grow the heap
+     * while the mandatory processors hold back the reader.
+     */
+    private final int MAX_BACKLOG_SIZE_IN_BYTES = 64 * 1024 * 1024;
     /**
-     * Set to {@link Integer#MAX_VALUE}.
+     * The number of buffers triaged per wakeup.
      */
-    private final int MAX_BACKLOG_SIZE_IN_BYTES = Integer.MAX_VALUE;
-    protected final BlockingQueue<Pair<byte[], Long>> byteQueue;
-    protected long currentLength = 0;
+    protected static final int BATCH_SIZE = 8;
+    private final RingBuffer<PooledBuffer> byteQueue;
+    private RingBuffer<PooledBuffer>.Cursor source;
     private final String friendlyName;
     private boolean hasWarned = false;
+    /**
+     * The end of the last buffer taken or skipped, or -1. Only used by the thread taking batches.
+     */
+    private long takenOffset = -1;
 
     /**
      *
@@ -31,24 +52,119 @@ public abstract class TriageProcessorBase extends ProcessorBase {
     protected TriageProcessorBase(String threadName, int readSize) {
        super(threadName);
        friendlyName = threadName;
-       byteQueue = new LinkedBlockingQueue<>(MAX_BACKLOG_SIZE_IN_BYTES/readSize);
+       byteQueue = new RingBuffer<>(Math.max(1, MAX_BACKLOG_SIZE_IN_BYTES/readSize));
+       source = byteQueue.newCursor();
+       metrics.setQueueDepth(() -> this.source.getLag());
     }
 
     /**
-     * Attempts to add the given byte array to a queue with a max capacity of {@link #MAX_BACKLOG_SIZE_IN_BYTES} bytes.
+     * Adds the given byte array to a queue with a max capacity of {@link #MAX_BACKLOG_SIZE_IN_BYTES} bytes.
      */
     @Override
     public void process(byte[] toProcess) {
-        if (!byteQueue.offer(new Pair<>(toProcess, currentLength))) {
-            if (!hasWarned) {
-                hasWarned = true;
-                Logging.log("Read speed is outpacing processor speed, " + friendlyName + " will not be able to process every byte.", LogMessageType.USER);
+        process(wrapInput(toProcess));
+    }
+
+    /**
+     * Adds the given buffer to a queue with a max capacity of {@link #MAX_BACKLOG_SIZE_IN_BYTES} bytes. Buffers
+     * that cannot be triaged in time are skipped by {@link #takeBatch(int, long, TimeUnit)}.
+     */
+    @Override
+    public void process(PooledBuffer toProcess) {
+        handOff(byteQueue, toProcess);
+    }
+
+    @Override
+    public Collection<Port<?>> getInputs() {
+        return Collections.singleton(Port.RAW);
+    }
+
+    @Override
+    public Collection<Port<?>> getOutputs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void connect(ProcessorGraph graph) {
+        // Triage only reads the device data, which is not delivered by the graph.
+    }
+
+    @Override
+    public void setSource(RingBuffer<PooledBuffer>.Cursor source) {
+        this.source.close();
+        this.source = source;
+    }
+
+    /**
+     * Takes the buffers to triage that have arrived, up to the given number. Once this processor is more than half
+     * the capacity of its source behind, or the {@link MemoryBudget#getShared() memory budget} is under pressure, each
+     * buffer is released and skipped until it has caught up, so that triage never holds back the reader or the
+     * mandatory processors.
+     * @param maxBuffers The most buffers to take.
+     * @param timeout How long to wait for a buffer.
+     * @param unit The unit of the timeout.
+     * @return The buffers, which must be released. Empty if none arrived in time or all were skipped, and
+     *         {@link BufferBatch#isEndOfInput() marked} once the end of input has been reached.
+     * @throws InterruptedException Interrupted while waiting.
+     */
+    protected BufferBatch takeBatch(int maxBuffers, long timeout, TimeUnit unit) throws InterruptedException {
+        List<PooledBuffer> taken = new ArrayList<>(maxBuffers);
+        long waitStart = System.nanoTime();
+        source.drainTo(taken, maxBuffers, timeout, unit);
+        metrics.addInputWait(waitStart);
+        BufferBatch batch = new BufferBatch(taken.size());
+        for (int i = 0; i < taken.size(); i++) {
+            PooledBuffer toRead = taken.get(i);
+            int length = toRead.length();
+            if (length == 0) {
+                batch.setEndOfInput();
+                break;
+            }
+            takenOffset = toRead.getDescriptor().getEnd();
+            // The rest of the batch is still part of the backlog.
+            long backlog = source.getLag() + taken.size() - i - 1;
+            if (backlog < source.getCapacity() / 2 && !MemoryBudget.getShared().isUnderPressure()) {
+                metrics.addBytesProcessed(length);
+                batch.add(toRead);
+                continue;
             }
-            Logging.log("Read speed is outpacing processor speed, " + friendlyName + " was unable to process bytes "
-                    + currentLength +"through " + (currentLength + toProcess.length) +".", LogMessageType.DEBUG);
-            // TODO: Log ranges and report at end rather than during? Unsure.
+            skip(toRead);
         }
-        currentLength += toProcess.length;
+        return batch;
+    }
+
+    /**
+     * Get how far into the device this processor has taken its input, whether each buffer was kept or skipped. Must
+     * be called from the thread taking batches.
+     * @return The offset of the end of the last buffer taken, or -1 if none have been.
+     */
+    protected long getTakenOffset() {
+        return takenOffset;
+    }
+
+    /**
+     * Releases and skips every buffer in the given batch, for when there is no time to triage it without holding back
+     * the reader.
+     * @param batch The batch, which must not be used afterwards.
+     */
+    protected void skipBatch(BufferBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            skip(batch.get(i));
+        }
+    }
+
+    private void skip(PooledBuffer toSkip) {
+        ChunkDescriptor skipped = toSkip.getDescriptor();
+        metrics.addBytesDropped(toSkip.length());
+        toSkip.release();
+        if (!hasWarned) {
+            hasWarned = true;
+            Logging.log("Read speed is outpacing processor speed, " + friendlyName + " will not be able to process every byte.", LogMessageType.USER);
+        }
+        Logging.log("Read speed is outpacing processor speed, " + friendlyName + " was unable to process sectors "
+                + skipped.getFirstSector() + " through " + (skipped.getFirstSector() + skipped.getSectorCount() - 1) + ".",
+                LogMessageType.DEBUG);
+        // TODO: Log ranges and report at end rather than during? Unsure.
     }
 
     /**
@@ -56,7 +172,12 @@ public abstract class TriageProcessorBase extends ProcessorBase {
      */
     @Override
     public void finish() {
-        byteQueue.add(new Pair<>(new byte[0], currentLength));
+        handOff(byteQueue, PooledBuffer.wrap(new byte[0]));
+    }
+
+    @Override
+    protected void onExit() {
+        source.close();
     }
 
     @Override
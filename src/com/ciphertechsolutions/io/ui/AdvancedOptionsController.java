@@ -124,6 +124,7 @@ public class AdvancedOptionsController extends BaseController {
             AdvancedOptions options = new AdvancedOptions(configNameField.getText(), saveLocation, compression,
                     descriptionField.getText(), examinerNameField.getText(), caseNumberField.getText(),
                     evidenceNumberField.getText(), notesField.getText());
+            options.copyUnlistedOptions(selectedConfig);
             workflowController.saveOptions(options);
             selectedConfig = options;
             changeScene(loadFXML(MainScreenController.class, MainScreenController.getFXMLLocation()).getScene());
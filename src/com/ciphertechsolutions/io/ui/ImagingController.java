@@ -1,17 +1,14 @@
 package com.ciphertechsolutions.io.ui;
 
 import java.net.URL;
-import java.time.Duration;
 import java.util.List;
 import java.util.ResourceBundle;
 
+import com.ciphertechsolutions.io.applicationLogic.IProgressListener;
+import com.ciphertechsolutions.io.applicationLogic.ProgressSample;
 import com.ciphertechsolutions.io.applicationLogic.Utils;
 
 import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.WeakChangeListener;
-import javafx.collections.ListChangeListener;
-import javafx.collections.WeakListChangeListener;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
@@ -35,9 +32,6 @@ public class ImagingController extends BaseController {
     @FXML
     private ProgressBar progressBar;
 
-    private ListChangeListener<String> outputListener;
-    private ChangeListener<Number> progressListener;
-
     /**
      * Get the location of this controller's corresponding FXML file.
      *
@@ -75,8 +69,7 @@ public class ImagingController extends BaseController {
     }
 
     private void displayImagingProgress() {
-        workflowController.registerOutputListener(getOutputToScreenLogger());
-        workflowController.registerProgressListener(getProgressUpdater());
+        workflowController.registerProgressListener(new ProgressDisplay());
     }
 
     @Override
@@ -95,90 +88,32 @@ public class ImagingController extends BaseController {
         setTitle("IO - Imaging");
     }
 
-    private ListChangeListener<String> getOutputToScreenLogger() {
-        outputListener = new ListChangeListener<String>() {
-            boolean first = true;
-
-            @Override
-            public void onChanged(ListChangeListener.Change<? extends String> change) {
-                change.next();
-                Platform.runLater(() -> {
-                    List<? extends String> changedList = change.getList();
-                    for (int index = first ? 0 : change.getFrom(); index < change.getTo(); index++) {
-                        String added = changedList.get(index);
-                        if (added != null) {
-                            outputTextArea.appendText(added);
-                        }
-                    }
-                    first = false;
-                });
-            }
-        };
-        return new WeakListChangeListener<>(outputListener);
-    }
+    /**
+     * Shows the output and progress of the imaging, in batches delivered on the JavaFX application thread.
+     */
+    private class ProgressDisplay implements IProgressListener {
 
-    private ChangeListener<Number> getProgressUpdater() {
-        ProgressStatus currentStatus = new ProgressStatus();
-        progressListener = (arg0, oldVal, newVal) -> Platform.runLater(() -> {
-            if (!progressBar.isDisabled()) {
-                long newLong = newVal.longValue();
-                if (newLong > 0) {
-                    currentStatus.onChange(newLong);
-                }
-                else if (newVal.intValue() == -1) {
-                    // failureLabel.setVisible(true);
-                    progressBar.setDisable(true);
-                    displayErrorPopup("Error: Failed to complete imaging.\n");
-                }
+        @Override
+        public void linesAdded(List<String> lines) {
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                text.append(line);
             }
-        });
-        return new WeakChangeListener<>(progressListener);
-    }
-
-    private class ProgressStatus {
-        private int calls;
-        private double lastAverage;
-        private final long max;
-        private final long startTime;
-
-        protected ProgressStatus() {
-            calls = 0;
-            lastAverage = 0;
-            max = workflowController.getMaxOutputCount();
-            startTime = System.nanoTime();
+            outputTextArea.appendText(text.toString());
         }
 
-        protected void onChange(long newCount) {
-            double percentComplete = newCount / (double) max;
-            calls++;
-            if (calls % 250 == 0) {
-                estimateRemainingTime(percentComplete);
-            }
-            if (newCount == max) {
+        @Override
+        public void progressChanged(ProgressSample sample) {
+            if (sample.isComplete()) {
                 timeEstimateLabel.setText("Complete");
                 setReturnVisible();
             }
-            else if (lastAverage > 0) {
-                timeEstimateLabel.setText(Math.round((1 - percentComplete) * 100) + "% remaining: " + getTime());
+            else if (sample.getRemaining() != null) {
+                timeEstimateLabel.setText(Math.round((1 - sample.getFraction()) * 100) + "% remaining: "
+                        + Utils.getPrettyTime(sample.getRemaining()));
                 timeEstimateLabel.setVisible(true);
             }
-            progressBar.setProgress(percentComplete);
-        }
-
-        protected String getTime() {
-            return Utils.getPrettyTime(Duration.ofSeconds(Math.max(Math.round(lastAverage - (System.nanoTime() - startTime) / 1000000000), 0)));
-        }
-
-        protected void estimateRemainingTime(double percentComplete) {
-            double newEstimate = (System.nanoTime() - startTime) / percentComplete / 1000000000;
-            double estimatedTimeRemaining;
-            if (lastAverage > 0) {
-                estimatedTimeRemaining = (newEstimate + lastAverage) / 2;
-            }
-            else {
-                estimatedTimeRemaining = newEstimate;
-            }
-            lastAverage = estimatedTimeRemaining;
+            progressBar.setProgress(sample.getFraction());
         }
     }
 